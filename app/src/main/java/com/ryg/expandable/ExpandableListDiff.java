@@ -0,0 +1,77 @@
+package com.ryg.expandable;
+
+import android.text.TextUtils;
+import android.widget.ExpandableListView;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/***
+ * 比较新旧两份数据
+ * <p>
+ * 按 id 对比: group 或子元素的增删、移动算结构变化; id 相同但字段不同的算内容变化,
+ * 只需要原地重新绑定对应的条目. 结构变化里单独区分只在末尾追加或删除 group 的情况,
+ * 这时前面的条目位置都不变.
+ */
+class ExpandableListDiff {
+    // 有没有结构变化
+    final boolean structureChanged;
+    // 结构变化只是在末尾追加或删除了 group, 前面的 group 和子元素的 id 都没变
+    final boolean groupsChangedAtEnd;
+    // 内容变化的条目, 值为 ExpandableListView 的 packed position
+    final Set<Long> changedPositions;
+
+    private ExpandableListDiff(boolean structureChanged, boolean groupsChangedAtEnd, Set<Long> changedPositions) {
+        this.structureChanged = structureChanged;
+        this.groupsChangedAtEnd = groupsChangedAtEnd;
+        this.changedPositions = changedPositions;
+    }
+
+    boolean isEmpty() {
+        return !structureChanged && changedPositions.isEmpty();
+    }
+
+    /**
+     * 可以在后台线程调用, 调用期间两份数据都不能被修改
+     */
+    static ExpandableListDiff compute(List<Group> oldGroups, List<? extends List<People>> oldChildren,
+                                      List<Group> newGroups, List<? extends List<People>> newChildren) {
+        Set<Long> changedPositions = new HashSet<Long>();
+        // 先比较两边都有的 group, 多出来的 group 都在末尾
+        for (int i = 0, groupCount = Math.min(oldGroups.size(), newGroups.size()); i < groupCount; i++) {
+            Group oldGroup = oldGroups.get(i);
+            Group newGroup = newGroups.get(i);
+            if (oldGroup.getId() != newGroup.getId()) {
+                return new ExpandableListDiff(true, false, changedPositions);
+            }
+            if (!TextUtils.equals(oldGroup.getTitle(), newGroup.getTitle())) {
+                changedPositions.add(ExpandableListView.getPackedPositionForGroup(i));
+            }
+
+            List<People> oldList = oldChildren.get(i);
+            List<People> newList = newChildren.get(i);
+            if (oldList.size() != newList.size()) {
+                return new ExpandableListDiff(true, false, changedPositions);
+            }
+            for (int j = 0, childCount = newList.size(); j < childCount; j++) {
+                People oldPeople = oldList.get(j);
+                People newPeople = newList.get(j);
+                if (oldPeople.getId() != newPeople.getId()) {
+                    return new ExpandableListDiff(true, false, changedPositions);
+                }
+                if (!isSameContent(oldPeople, newPeople)) {
+                    changedPositions.add(ExpandableListView.getPackedPositionForChild(i, j));
+                }
+            }
+        }
+        boolean groupsChangedAtEnd = oldGroups.size() != newGroups.size();
+        return new ExpandableListDiff(groupsChangedAtEnd, groupsChangedAtEnd, changedPositions);
+    }
+
+    private static boolean isSameContent(People oldPeople, People newPeople) {
+        return oldPeople.getAge() == newPeople.getAge()
+                && TextUtils.equals(oldPeople.getName(), newPeople.getName())
+                && TextUtils.equals(oldPeople.getAddress(), newPeople.getAddress());
+    }
+}
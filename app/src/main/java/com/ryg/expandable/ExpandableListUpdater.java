@@ -0,0 +1,185 @@
+package com.ryg.expandable;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.widget.ExpandableListView;
+
+import com.ryg.expandable.ui.PinnedHeaderExpandableListView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/***
+ * 在后台比较新旧数据, 再用最小的代价刷新列表
+ * <p>
+ * ExpandableListView 只支持整体的 notifyDataSetChanged, 没有单独的插入/删除/移动通知, 所以:
+ * <ul>
+ * <li>没有变化: 什么也不做</li>
+ * <li>只有内容变化: 替换数据, 只把屏幕上变化的条目原地重新绑定, 不通知列表;
+ * 固定头部的 group 变了才刷新头部</li>
+ * <li>只在末尾追加或删除了 group: 替换数据后通知一次, 前面的条目位置不变, 列表自己保持滚动位置,
+ * 展开状态和固定的头部也不用重新计算</li>
+ * <li>其他结构变化: 替换数据后通知一次, 展开状态由稳定的 id 保持,
+ * 并按更新前第一个可见条目的 id 恢复滚动位置</li>
+ * </ul>
+ * 连续提交时只应用最后一次的结果.
+ */
+public class ExpandableListUpdater {
+    private final PinnedHeaderExpandableListView listView;
+    private final MyExpandableListAdapter adapter;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int generation;
+
+    public ExpandableListUpdater(PinnedHeaderExpandableListView listView, MyExpandableListAdapter adapter) {
+        this.listView = listView;
+        this.adapter = adapter;
+    }
+
+    /**
+     * 提交新的数据, 在主线程调用; 提交之后不能再修改这两个列表
+     */
+    public void submit(final ArrayList<Group> groupList, final ArrayList<List<People>> childList) {
+        final int submitGeneration = ++generation;
+        final ArrayList<Group> oldGroupList = adapter.getGroupList();
+        final ArrayList<List<People>> oldChildList = adapter.getChildList();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ExpandableListDiff diff = ExpandableListDiff.compute(oldGroupList, oldChildList,
+                        groupList, childList);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 已经有更新的提交, 或者数据在这期间被别人换掉了
+                        if (submitGeneration != generation || adapter.getGroupList() != oldGroupList) {
+                            return;
+                        }
+                        apply(diff, groupList, childList);
+                    }
+                });
+            }
+        });
+    }
+
+    public void release() {
+        generation++;
+        executor.shutdownNow();
+    }
+
+    private void apply(ExpandableListDiff diff, ArrayList<Group> groupList, ArrayList<List<People>> childList) {
+        // 过滤时列表上的位置和 diff 里的位置对不上, 交给适配器重新过滤后整体刷新
+        if (adapter.isFiltered() || diff.isEmpty()) {
+            adapter.setData(groupList, childList);
+            return;
+        }
+        if (diff.groupsChangedAtEnd) {
+            applyGroupsChangedAtEnd(diff, groupList, childList);
+        } else if (diff.structureChanged) {
+            applyStructureChange(groupList, childList);
+        } else {
+            adapter.setData(groupList, childList);
+            rebindChangedViews(diff);
+        }
+    }
+
+    private void rebindChangedViews(ExpandableListDiff diff) {
+        int firstVisiblePos = listView.getFirstVisiblePosition();
+        for (int i = 0, count = listView.getChildCount(); i < count; i++) {
+            long packedPos = listView.getExpandableListPosition(firstVisiblePos + i);
+            if (!diff.changedPositions.contains(packedPos)) {
+                continue;
+            }
+            View view = listView.getChildAt(i);
+            int groupPos = ExpandableListView.getPackedPositionGroup(packedPos);
+            if (ExpandableListView.getPackedPositionType(packedPos) == ExpandableListView.PACKED_POSITION_TYPE_GROUP) {
+                adapter.getGroupView(groupPos, listView.isGroupExpanded(groupPos), view, listView);
+            } else {
+                int childPos = ExpandableListView.getPackedPositionChild(packedPos);
+                boolean isLastChild = childPos == adapter.getChildrenCount(groupPos) - 1;
+                adapter.getChildView(groupPos, childPos, isLastChild, view, listView);
+            }
+        }
+        refreshHeaderIfChanged(diff);
+    }
+
+    // 固定头部的 group 内容变了才刷新头部
+    private void refreshHeaderIfChanged(ExpandableListDiff diff) {
+        int pinnedGroupPos = listView.getPinnedGroupPosition();
+        if (pinnedGroupPos != ExpandableListView.INVALID_POSITION
+                && diff.changedPositions.contains(ExpandableListView.getPackedPositionForGroup(pinnedGroupPos))) {
+            listView.requestRefreshHeader();
+        }
+    }
+
+    private void applyGroupsChangedAtEnd(ExpandableListDiff diff, ArrayList<Group> groupList,
+                                         ArrayList<List<People>> childList) {
+        int oldGroupCount = adapter.getGroupCount();
+        adapter.setData(groupList, childList);
+        // 前面的条目位置没变, 列表按位置保持滚动位置, 不用按 id 找回第一个可见条目
+        adapter.notifyDataSetChanged();
+        listView.onGroupsChangedAtEnd(oldGroupCount);
+        refreshHeaderIfChanged(diff);
+    }
+
+    private void applyStructureChange(ArrayList<Group> groupList, ArrayList<List<People>> childList) {
+        // 记下第一个可见条目的 id 和位置
+        int firstVisiblePos = listView.getFirstVisiblePosition();
+        View firstView = listView.getChildAt(0);
+        // setSelectionFromTop 的距离从列表的上内边距算起
+        int top = firstView != null ? firstView.getTop() - listView.getListPaddingTop() : 0;
+        long packedPos = listView.getExpandableListPosition(firstVisiblePos);
+        long anchorGroupId = -1;
+        long anchorChildId = 0;
+        boolean anchorIsChild = false;
+        boolean hasAnchor = packedPos != ExpandableListView.PACKED_POSITION_VALUE_NULL;
+        if (hasAnchor) {
+            int groupPos = ExpandableListView.getPackedPositionGroup(packedPos);
+            anchorGroupId = adapter.getGroupId(groupPos);
+            if (ExpandableListView.getPackedPositionType(packedPos) == ExpandableListView.PACKED_POSITION_TYPE_CHILD) {
+                anchorChildId = adapter.getChildId(groupPos, ExpandableListView.getPackedPositionChild(packedPos));
+                anchorIsChild = true;
+            }
+        }
+
+        adapter.setData(groupList, childList);
+        adapter.notifyDataSetChanged();
+
+        if (!hasAnchor) {
+            return;
+        }
+        int newGroupPos = indexOfGroup(groupList, anchorGroupId);
+        if (newGroupPos < 0) {
+            return;
+        }
+        long newPackedPos = ExpandableListView.getPackedPositionForGroup(newGroupPos);
+        if (anchorIsChild && listView.isGroupExpanded(newGroupPos)) {
+            int newChildPos = indexOfChild(childList.get(newGroupPos), anchorChildId);
+            if (newChildPos >= 0) {
+                newPackedPos = ExpandableListView.getPackedPositionForChild(newGroupPos, newChildPos);
+            }
+        }
+        listView.setSelectionFromTop(listView.getFlatListPosition(newPackedPos), top);
+    }
+
+    private static int indexOfGroup(List<Group> groupList, long id) {
+        for (int i = 0, count = groupList.size(); i < count; i++) {
+            if (groupList.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfChild(List<People> children, long id) {
+        for (int i = 0, count = children.size(); i < count; i++) {
+            if (children.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
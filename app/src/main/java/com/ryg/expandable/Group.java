@@ -2,7 +2,18 @@ package com.ryg.expandable;
 
 public class Group {
 
+    private long id;
     private String title;
+    private int childCount;
+
+    // 稳定的 id, 数据更新前后同一个组的 id 不变
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
 
     public String getTitle() {
         return title;
@@ -11,4 +22,13 @@ public class Group {
     public void setTitle(String title) {
         this.title = title;
     }
+
+    // 分页加载时子元素还没有加载出来, 只知道个数
+    public int getChildCount() {
+        return childCount;
+    }
+
+    public void setChildCount(int childCount) {
+        this.childCount = childCount;
+    }
 }
@@ -3,32 +3,44 @@ package com.ryg.expandable;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.ryg.expandable.ui.FrameBudgetChecker;
+import com.ryg.expandable.ui.GroupSectionIndexer;
 import com.ryg.expandable.ui.PinnedHeaderExpandableListView;
 import com.ryg.expandable.ui.StickyLayout;
 import com.ryg.expandable.ui.PinnedHeaderExpandableListView.OnHeaderUpdateListener;
+import com.ryg.expandable.ui.TraceSink;
 
 import android.app.Activity;
+import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AbsListView.LayoutParams;
+import android.widget.EditText;
 import android.widget.ExpandableListView;
-import android.widget.TextView;
 import android.widget.Toast;
 // https://blog.csdn.net/singwhatiwanna/article/details/25546871
 public class MainActivity extends Activity implements
         ExpandableListView.OnChildClickListener,
         ExpandableListView.OnGroupClickListener,
         OnHeaderUpdateListener, StickyLayout.OnGiveUpTouchEventListener {
-    private static final String TAG = "MainActivity";
     private PinnedHeaderExpandableListView expandableListView;
     private StickyLayout stickyLayout;
     private ArrayList<Group> groupList;
     private ArrayList<List<People>> childList;
 
     private MyExpandableListAdapter adapter;
+    // 数据的更新都交给它, 按变化的种类选择刷新方式
+    private ExpandableListUpdater updater;
+    private long nextPeopleId;
+    private FrameBudgetChecker frameBudgetChecker;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -39,19 +51,141 @@ public class MainActivity extends Activity implements
         initData();
 
         adapter = new MyExpandableListAdapter(this, groupList, childList);
+        // 快速滚动条以 group 为 section, 要在 setAdapter 之前设置, FastScroller 在那时读取 section
+        adapter.setSectionIndexer(new GroupSectionIndexer(expandableListView));
         expandableListView.setAdapter(adapter);
+        updater = new ExpandableListUpdater(expandableListView, adapter);
+        // 第一次显示后滚动时需要的行布局在后台线程先准备好
+        adapter.prefetch(expandableListView, 2, 10);
 
         // 展开所有group
-        for (int i = 0, count = expandableListView.getCount(); i < count; i++) {
-            expandableListView.expandGroup(i);
-        }
+        expandableListView.expandAll();
+        // 示例里所有 group、子元素的高度都一样, 行高在第一次布局时读取
+        expandableListView.setFixedItemHeights(0, 0);
 
         expandableListView.setOnHeaderUpdateListener(this);
         expandableListView.setOnChildClickListener(this);
         expandableListView.setOnGroupClickListener(this);
+        installSearch();
+        // 偏移模式下 API 21 以上通过嵌套滑动和列表联动, giveUpTouchEvent 只在低版本上用到
+        stickyLayout.setCollapseMode(StickyLayout.COLLAPSE_MODE_OFFSET);
         stickyLayout.setOnGiveUpTouchEventListener(this);
 //        stickyLayout.setSticky(false);
 //        stickyLayout.requestDisallowInterceptTouchEventOnHeader(true);
+        if (BuildConfig.DEBUG) {
+            installFrameBudgetChecker();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+        case R.id.menu_append_group:
+            appendGroup();
+            return true;
+        case R.id.menu_remove_group:
+            removeLastGroup();
+            return true;
+        case R.id.menu_paged:
+            startActivity(new Intent(this, PagedActivity.class));
+            return true;
+        default:
+            return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /**
+     * 在末尾追加一个分组, 提交的是新的列表, 适配器正在用的列表不能修改
+     */
+    private void appendGroup() {
+        groupList = new ArrayList<Group>(groupList);
+        childList = new ArrayList<List<People>>(childList);
+        Group lastGroup = groupList.isEmpty() ? null : groupList.get(groupList.size() - 1);
+        Group group = new Group();
+        group.setId(lastGroup == null ? 0 : lastGroup.getId() + 1);
+        group.setTitle("group-" + group.getId());
+        groupList.add(group);
+        ArrayList<People> children = new ArrayList<People>();
+        for (int j = 0; j < 10; j++) {
+            People people = new People();
+            people.setId(nextPeopleId++);
+            people.setName("gg-" + j);
+            people.setAge(25);
+            people.setAddress("sh-" + j);
+            children.add(people);
+        }
+        childList.add(children);
+        updater.submit(groupList, childList);
+    }
+
+    private void removeLastGroup() {
+        if (groupList.isEmpty()) {
+            return;
+        }
+        groupList = new ArrayList<Group>(groupList.subList(0, groupList.size() - 1));
+        childList = new ArrayList<List<People>>(childList.subList(0, childList.size() - 1));
+        updater.submit(groupList, childList);
+    }
+
+    /**
+     * 输入时在后台过滤, 结果出来后展开所有剩下的 group 并回到顶部, 固定的头部跟着重新计算
+     */
+    private void installSearch() {
+        adapter.setOnFilterPublishedListener(new MyExpandableListAdapter.OnFilterPublishedListener() {
+            @Override
+            public void onFilterPublished(CharSequence query, int matchCount) {
+                expandableListView.expandAll();
+                expandableListView.setSelection(0);
+            }
+        });
+        EditText searchView = (EditText) findViewById(R.id.search);
+        searchView.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                adapter.filter(s);
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+    }
+
+    /**
+     * debug 包里检查滚动时每一帧的开销: 不能有测量和布局, 头部最多绑定两次(固定的和正在进来的)
+     */
+    private void installFrameBudgetChecker() {
+        frameBudgetChecker = new FrameBudgetChecker();
+        frameBudgetChecker.setBudget(TraceSink.EVENT_MEASURE, 0);
+        frameBudgetChecker.setBudget(TraceSink.EVENT_LAYOUT, 0);
+        frameBudgetChecker.setBudget(TraceSink.EVENT_REQUEST_LAYOUT, 0);
+        frameBudgetChecker.setBudget(TraceSink.EVENT_BIND_HEADER, 2);
+        frameBudgetChecker.setEnforcing(false);
+        expandableListView.setTraceSink(frameBudgetChecker);
+        stickyLayout.setTraceSink(frameBudgetChecker);
+        adapter.setTraceSink(frameBudgetChecker);
+        frameBudgetChecker.attach(expandableListView);
+        // 只在列表滚动时检查, 展开/折叠和第一次布局本来就需要测量和布局
+        expandableListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                frameBudgetChecker.setEnforcing(scrollState != SCROLL_STATE_IDLE);
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            }
+        });
     }
 
     /***
@@ -62,17 +196,20 @@ public class MainActivity extends Activity implements
         Group group = null;
         for (int i = 0; i < 3; i++) {
             group = new Group();
+            group.setId(i);
             group.setTitle("group-" + i);
             groupList.add(group);
         }
 
         childList = new ArrayList<List<People>>();
+        long peopleId = 0;
         for (int i = 0; i < groupList.size(); i++) {
             ArrayList<People> childTemp;
             if (i == 0) {
                 childTemp = new ArrayList<People>();
                 for (int j = 0; j < 13; j++) {
                     People people = new People();
+                    people.setId(peopleId++);
                     people.setName("yy-" + j);
                     people.setAge(30);
                     people.setAddress("sh-" + j);
@@ -83,6 +220,7 @@ public class MainActivity extends Activity implements
                 childTemp = new ArrayList<People>();
                 for (int j = 0; j < 8; j++) {
                     People people = new People();
+                    people.setId(peopleId++);
                     people.setName("ff-" + j);
                     people.setAge(40);
                     people.setAddress("sh-" + j);
@@ -93,6 +231,7 @@ public class MainActivity extends Activity implements
                 childTemp = new ArrayList<People>();
                 for (int j = 0; j < 23; j++) {
                     People people = new People();
+                    people.setId(peopleId++);
                     people.setName("hh-" + j);
                     people.setAge(20);
                     people.setAddress("sh-" + j);
@@ -102,6 +241,7 @@ public class MainActivity extends Activity implements
             }
             childList.add(childTemp);
         }
+        nextPeopleId = peopleId;
 
     }
     // 点击组的回调
@@ -116,7 +256,7 @@ public class MainActivity extends Activity implements
     public boolean onChildClick(ExpandableListView parent, View v,
             int groupPosition, int childPosition, long id) {
         Toast.makeText(MainActivity.this,
-                childList.get(groupPosition).get(childPosition).getName(), Toast.LENGTH_LONG)
+                adapter.getChild(groupPosition, childPosition).getName(), Toast.LENGTH_LONG)
                 .show();
 
         return false;
@@ -130,30 +270,41 @@ public class MainActivity extends Activity implements
         View headerView = (ViewGroup) getLayoutInflater().inflate(R.layout.group, null);
         headerView.setLayoutParams(new LayoutParams(
                 LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+        // 和列表里的 group 一样, 把子 View 缓存在 tag 里, 绑定时不再 findViewById
+        headerView.setTag(new MyExpandableListAdapter.GroupHolder(headerView));
 
         return headerView;
     }
-    // 更新固定的头部 View 的文本内容
+    // 更新固定的头部 View 的文本内容, 只在固定的 group 变化时回调
     // 属于 OnHeaderUpdateListener 的方法
     @Override
     public void updatePinnedHeader(View headerView, int firstVisibleGroupPos) {
         Group firstVisibleGroup = (Group) adapter.getGroup(firstVisibleGroupPos);
-        TextView textView = (TextView) headerView.findViewById(R.id.group);
-        textView.setText(firstVisibleGroup.getTitle());
+        MyExpandableListAdapter.GroupHolder holder = (MyExpandableListAdapter.GroupHolder) headerView.getTag();
+        // 文本没变时不调用 setText, 避免头部重新布局
+        if (!TextUtils.equals(holder.textView.getText(), firstVisibleGroup.getTitle())) {
+            holder.textView.setText(firstVisibleGroup.getTitle());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        adapter.cancelPrefetch();
+        updater.release();
+        if (frameBudgetChecker != null) {
+            frameBudgetChecker.detach();
+        }
     }
 
     @Override
     public boolean giveUpTouchEvent(MotionEvent event) {
-        Log.d(TAG, "giveUpTouchEvent: expandableListView.getFirstVisiblePosition()="+expandableListView.getFirstVisiblePosition());
         if (expandableListView.getFirstVisiblePosition() == 0) {
             View view = expandableListView.getChildAt(0);
-            Log.d(TAG, "giveUpTouchEvent: view="+view + ", view.getTop()=" + view.getTop());
             if (view != null && view.getTop() >= 0) {
-                Log.d(TAG, "giveUpTouchEvent: true");
                 return true;
             }
         }
-        Log.d(TAG, "giveUpTouchEvent: false");
         return false;
     }
 
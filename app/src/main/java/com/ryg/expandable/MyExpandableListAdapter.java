@@ -1,17 +1,21 @@
 package com.ryg.expandable;
 
 import android.content.Context;
-import android.view.LayoutInflater;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.BaseExpandableListAdapter;
-import android.widget.Button;
+import android.widget.Filter;
+import android.widget.Filterable;
 import android.widget.ImageView;
+import android.widget.SectionIndexer;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.ryg.expandable.ui.GroupSectionIndexer;
+import com.ryg.expandable.ui.PrefetchingExpandableListAdapter;
+
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
 
 /***
  * 数据源
@@ -19,50 +23,186 @@ import java.util.List;
  * @author Administrator
  *
  */
-public class MyExpandableListAdapter extends BaseExpandableListAdapter {
+public class MyExpandableListAdapter extends PrefetchingExpandableListAdapter<
+        MyExpandableListAdapter.GroupHolder, MyExpandableListAdapter.ChildHolder> implements Filterable, SectionIndexer {
     private Context context;
-    private LayoutInflater inflater;
+    // 数据源
     private ArrayList<Group> groupList;
     private ArrayList<List<People>> childList;
+    // 正在显示的数据, 没有过滤时和数据源相同; 过滤时要等新的结果出来才换成新的数据源
+    private ArrayList<Group> displayGroupList;
+    private ArrayList<List<People>> displayChildList;
+    // 过滤后显示的 group 在 displayGroupList 里的位置, 为 null 表示没有过滤
+    private int[] visibleGroups;
+    // visibleChildren[i] 是第 i 个显示的 group 里匹配的子元素在原来 group 里的位置
+    private int[][] visibleChildren;
+    private PeopleFilter filter;
+    private OnFilterPublishedListener onFilterPublishedListener;
+    private GroupSectionIndexer sectionIndexer;
+    // 显示的 group 变化后置为 null, 下次取的时候重新生成
+    private Object[] sections;
+
+    /**
+     * 过滤结果显示到列表上之后回调
+     */
+    public interface OnFilterPublishedListener {
+        /**
+         * @param matchCount 匹配的子元素个数, 取消过滤时为 -1
+         */
+        public void onFilterPublished(CharSequence query, int matchCount);
+    }
+
     public MyExpandableListAdapter(Context context, ArrayList<Group> groupList,
                                    ArrayList<List<People>> childList) {
+        super(context, R.layout.group, R.layout.child);
         this.context = context;
-        inflater = LayoutInflater.from(context);
         this.groupList = groupList;
         this.childList = childList;
+        this.displayGroupList = groupList;
+        this.displayChildList = childList;
+    }
+
+    ArrayList<Group> getGroupList() {
+        return groupList;
+    }
+
+    ArrayList<List<People>> getChildList() {
+        return childList;
+    }
+
+    /**
+     * 替换数据但不通知列表, 由 {@link ExpandableListUpdater} 决定怎样刷新;
+     * 正在过滤时按新的数据重新过滤, 结果出来后再通知列表
+     */
+    void setData(ArrayList<Group> groupList, ArrayList<List<People>> childList) {
+        this.groupList = groupList;
+        this.childList = childList;
+        sections = null;
+        if (filter != null) {
+            filter.setSource(groupList, childList);
+        }
+        if (isFiltered()) {
+            filter.refilter();
+        } else {
+            displayGroupList = groupList;
+            displayChildList = childList;
+        }
+    }
+
+    /**
+     * 按输入过滤, 在主线程调用; 空白的查询取消过滤.
+     * 和 getFilter().filter() 的结果一样, 但会让正在进行的旧查询提前结束
+     */
+    public void filter(CharSequence constraint) {
+        ((PeopleFilter) getFilter()).request(constraint);
+    }
+
+    /**
+     * @return 是否有正在生效或等待结果的过滤条件
+     */
+    boolean isFiltered() {
+        return filter != null && filter.isActive();
+    }
+
+    /**
+     * 设置快速滚动用的索引, 每个 group 是一个 section, 显示 group 的标题
+     */
+    public void setSectionIndexer(GroupSectionIndexer sectionIndexer) {
+        this.sectionIndexer = sectionIndexer;
+        sections = null;
+    }
+
+    @Override
+    public Object[] getSections() {
+        if (sectionIndexer == null) {
+            return null;
+        }
+        if (sections == null) {
+            int groupCount = getGroupCount();
+            sections = new Object[groupCount];
+            for (int i = 0; i < groupCount; i++) {
+                sections[i] = getGroup(i).getTitle();
+            }
+            sectionIndexer.setSections(sections);
+        }
+        return sectionIndexer.getSections();
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        if (sectionIndexer == null) {
+            return 0;
+        }
+        getSections();
+        return sectionIndexer.getPositionForSection(sectionIndex);
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        if (sectionIndexer == null) {
+            return 0;
+        }
+        getSections();
+        return sectionIndexer.getSectionForPosition(position);
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        sections = null;
+        super.notifyDataSetChanged();
+    }
+
+    public void setOnFilterPublishedListener(OnFilterPublishedListener listener) {
+        onFilterPublishedListener = listener;
+    }
+
+    /**
+     * 按姓名和地址的前缀过滤子元素, 只显示有匹配的 group; 空白的查询取消过滤
+     */
+    @Override
+    public Filter getFilter() {
+        if (filter == null) {
+            filter = new PeopleFilter();
+        }
+        return filter;
     }
 
     // 返回父列表个数
     @Override
     public int getGroupCount() {
-        return groupList.size();
+        return visibleGroups != null ? visibleGroups.length : displayGroupList.size();
     }
 
     // 返回子列表个数
     @Override
     public int getChildrenCount(int groupPosition) {
-        return childList.get(groupPosition).size();
+        return visibleGroups != null ? visibleChildren[groupPosition].length
+                : displayChildList.get(groupPosition).size();
     }
 
     @Override
-    public Object getGroup(int groupPosition) {
-
-        return groupList.get(groupPosition);
+    public Group getGroup(int groupPosition) {
+        return displayGroupList.get(getSourceGroupPosition(groupPosition));
     }
 
     @Override
-    public Object getChild(int groupPosition, int childPosition) {
-        return childList.get(groupPosition).get(childPosition);
+    public People getChild(int groupPosition, int childPosition) {
+        int sourceChildPosition = visibleGroups != null ? visibleChildren[groupPosition][childPosition] : childPosition;
+        return displayChildList.get(getSourceGroupPosition(groupPosition)).get(sourceChildPosition);
+    }
+
+    private int getSourceGroupPosition(int groupPosition) {
+        return visibleGroups != null ? visibleGroups[groupPosition] : groupPosition;
     }
 
     @Override
     public long getGroupId(int groupPosition) {
-        return groupPosition;
+        return getGroup(groupPosition).getId();
     }
 
     @Override
     public long getChildId(int groupPosition, int childPosition) {
-        return childPosition;
+        return getChild(groupPosition, childPosition).getId();
     }
 
     @Override
@@ -72,68 +212,39 @@ public class MyExpandableListAdapter extends BaseExpandableListAdapter {
     }
 
     @Override
-    public View getGroupView(int groupPosition, boolean isExpanded,
-                             View convertView, ViewGroup parent) {
-        GroupHolder groupHolder = null;
-        if (convertView == null) {
-            groupHolder = new GroupHolder();
-            convertView = inflater.inflate(R.layout.group, null);
-            groupHolder.textView = (TextView) convertView
-                    .findViewById(R.id.group);
-            groupHolder.imageView = (ImageView) convertView
-                    .findViewById(R.id.image);
-            convertView.setTag(groupHolder);
-        } else {
-            groupHolder = (GroupHolder) convertView.getTag();
-        }
+    protected GroupHolder onCreateGroupHolder(View groupView) {
+        return new GroupHolder(groupView);
+    }
+
+    @Override
+    protected ChildHolder onCreateChildHolder(View childView) {
+        ChildHolder childHolder = new ChildHolder(childView);
+        childHolder.bindRowClick(childView.findViewById(R.id.button1), this);
+        return childHolder;
+    }
 
-        groupHolder.textView.setText(((Group) getGroup(groupPosition))
-                .getTitle());
+    @Override
+    protected void onBindGroupHolder(GroupHolder groupHolder, int groupPosition, boolean isExpanded) {
+        groupHolder.textView.setText(getGroup(groupPosition).getTitle());
         if (isExpanded)// ture is Expanded or false is not isExpanded
             groupHolder.imageView.setImageResource(R.drawable.expanded);
         else
             groupHolder.imageView.setImageResource(R.drawable.collapse);
-        return convertView;
-    }
-
-    @Override
-    public View getChildView(int groupPosition, int childPosition,
-                             boolean isLastChild, View convertView, final ViewGroup parent) {
-        ChildHolder childHolder = null;
-        if (convertView == null) {
-            childHolder = new ChildHolder();
-            convertView = inflater.inflate(R.layout.child, null);
-
-            childHolder.textName = (TextView) convertView
-                    .findViewById(R.id.name);
-            childHolder.textAge = (TextView) convertView
-                    .findViewById(R.id.age);
-            childHolder.textAddress = (TextView) convertView
-                    .findViewById(R.id.address);
-            childHolder.imageView = (ImageView) convertView
-                    .findViewById(R.id.image);
-            Button button = (Button) convertView
-                    .findViewById(R.id.button1);
-            button.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    Toast.makeText(parent.getContext(), "clicked pos=", Toast.LENGTH_SHORT).show();
-                }
-            });
-
-            convertView.setTag(childHolder);
-        } else {
-            childHolder = (ChildHolder) convertView.getTag();
-        }
+    }
 
-        childHolder.textName.setText(((People) getChild(groupPosition,
-                childPosition)).getName());
-        childHolder.textAge.setText(String.valueOf(((People) getChild(
-                groupPosition, childPosition)).getAge()));
-        childHolder.textAddress.setText(((People) getChild(groupPosition,
-                childPosition)).getAddress());
+    @Override
+    protected void onBindChildHolder(ChildHolder childHolder, int groupPosition, int childPosition,
+                                     boolean isLastChild) {
+        People people = getChild(groupPosition, childPosition);
+        childHolder.textName.setText(people.getName());
+        childHolder.textAge.setText(String.valueOf(people.getAge()));
+        childHolder.textAddress.setText(people.getAddress());
+    }
 
-        return convertView;
+    // 所有子元素的按钮共用这一个监听
+    @Override
+    protected void onRowViewClick(View view, int groupPosition, int childPosition) {
+        Toast.makeText(context, "clicked pos=" + groupPosition + "-" + childPosition, Toast.LENGTH_SHORT).show();
     }
 
     @Override
@@ -141,15 +252,187 @@ public class MyExpandableListAdapter extends BaseExpandableListAdapter {
         return true;
     }
 
-    static class GroupHolder {
-        TextView textView;
-        ImageView imageView;
+    /**
+     * 在后台线程建立索引并查询, 在主线程把结果换到列表上
+     * <p>
+     * 每次请求都带一个递增的序号, 正在查询的请求过时后在下一个词上提前结束, 过时的结果不会显示.
+     * 新的查询是在上一次的查询后面继续输入时, 只在上一次的结果里查找.
+     */
+    private class PeopleFilter extends Filter implements PeopleSearchIndex.CancellationSignal {
+        // 在主线程写, 在过滤线程读
+        private volatile int requestGeneration;
+        private volatile ArrayList<Group> requestGroupList;
+        private volatile ArrayList<List<People>> requestChildList;
+        // 只在主线程访问
+        private String currentQuery = "";
+        // 只在过滤线程访问
+        private int runningGeneration;
+        private PeopleSearchIndex index;
+        private List<Group> indexedGroupList;
+        private String lastQuery;
+        private BitSet lastResult;
+
+        PeopleFilter() {
+            setSource(groupList, childList);
+        }
+
+        /**
+         * 数据源变化时在主线程调用, 之后开始的查询使用新的数据
+         */
+        void setSource(ArrayList<Group> groupList, ArrayList<List<People>> childList) {
+            requestGroupList = groupList;
+            requestChildList = childList;
+        }
+
+        // Filter#filter 是 final 的, 记下请求的序号后再交给它
+        void request(CharSequence constraint) {
+            currentQuery = normalize(constraint);
+            requestGeneration++;
+            filter(constraint);
+        }
+
+        void refilter() {
+            request(currentQuery);
+        }
+
+        boolean isActive() {
+            return currentQuery.length() > 0;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return runningGeneration != requestGeneration;
+        }
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            runningGeneration = requestGeneration;
+            ArrayList<Group> groups = requestGroupList;
+            ArrayList<List<People>> children = requestChildList;
+            FilterResults results = new FilterResults();
+            String[] terms = PeopleSearchIndex.splitQuery(normalize(constraint));
+            if (terms.length == 0) {
+                results.values = new FilterSnapshot(runningGeneration, groups, children, null, null);
+                results.count = -1;
+                return results;
+            }
+            if (index == null || indexedGroupList != groups) {
+                index = PeopleSearchIndex.build(groups, children);
+                indexedGroupList = groups;
+                lastQuery = null;
+                lastResult = null;
+            }
+            String query = normalize(constraint);
+            BitSet candidates = lastQuery != null && query.startsWith(lastQuery) ? lastResult : null;
+            BitSet matches = index.search(terms, candidates, this);
+            if (matches == null) {
+                // 已经有更新的请求, 这次的结果不用了
+                return results;
+            }
+            lastQuery = query;
+            lastResult = matches;
+
+            // 按 group 切分匹配的子元素
+            int[] groupPositions = new int[index.getGroupCount()];
+            int[][] childPositions = new int[index.getGroupCount()][];
+            int visibleGroupCount = 0;
+            for (int g = 0, groupCount = index.getGroupCount(); g < groupCount; g++) {
+                int start = index.getGroupStart(g);
+                int end = index.getGroupStart(g + 1);
+                int first = matches.nextSetBit(start);
+                if (first < 0) {
+                    break;
+                }
+                if (first >= end) {
+                    continue;
+                }
+                int count = 0;
+                for (int id = first; id >= 0 && id < end; id = matches.nextSetBit(id + 1)) {
+                    count++;
+                }
+                int[] positions = new int[count];
+                int i = 0;
+                for (int id = first; id >= 0 && id < end; id = matches.nextSetBit(id + 1)) {
+                    positions[i++] = id - start;
+                }
+                groupPositions[visibleGroupCount] = g;
+                childPositions[visibleGroupCount] = positions;
+                visibleGroupCount++;
+            }
+            int[] visibleGroupPositions = new int[visibleGroupCount];
+            int[][] visibleChildPositions = new int[visibleGroupCount][];
+            System.arraycopy(groupPositions, 0, visibleGroupPositions, 0, visibleGroupCount);
+            System.arraycopy(childPositions, 0, visibleChildPositions, 0, visibleGroupCount);
+            results.values = new FilterSnapshot(runningGeneration, groups, children,
+                    visibleGroupPositions, visibleChildPositions);
+            results.count = matches.cardinality();
+            return results;
+        }
+
+        @Override
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            FilterSnapshot snapshot = (FilterSnapshot) results.values;
+            // 过时的结果, 或者数据源在查询期间被换掉了
+            if (snapshot == null || snapshot.generation != requestGeneration || snapshot.groupList != groupList) {
+                return;
+            }
+            displayGroupList = snapshot.groupList;
+            displayChildList = snapshot.childList;
+            visibleGroups = snapshot.visibleGroups;
+            visibleChildren = snapshot.visibleChildren;
+            // 直接通过 getFilter().filter() 发起的请求没有经过 request, 在这里补上当前的查询
+            currentQuery = normalize(constraint);
+            notifyDataSetChanged();
+            if (onFilterPublishedListener != null) {
+                onFilterPublishedListener.onFilterPublished(constraint, results.count);
+            }
+        }
+
+        private String normalize(CharSequence constraint) {
+            return constraint == null ? "" : constraint.toString().trim().toLowerCase(Locale.US);
+        }
+    }
+
+    private static class FilterSnapshot {
+        final int generation;
+        final ArrayList<Group> groupList;
+        final ArrayList<List<People>> childList;
+        final int[] visibleGroups;
+        final int[][] visibleChildren;
+
+        FilterSnapshot(int generation, ArrayList<Group> groupList, ArrayList<List<People>> childList,
+                       int[] visibleGroups, int[][] visibleChildren) {
+            this.generation = generation;
+            this.groupList = groupList;
+            this.childList = childList;
+            this.visibleGroups = visibleGroups;
+            this.visibleChildren = visibleChildren;
+        }
     }
 
-    static class ChildHolder {
-        TextView textName;
-        TextView textAge;
-        TextView textAddress;
-        ImageView imageView;
+    static class GroupHolder extends PrefetchingExpandableListAdapter.RowHolder {
+        final TextView textView;
+        final ImageView imageView;
+
+        GroupHolder(View groupView) {
+            super(groupView);
+            textView = (TextView) groupView.findViewById(R.id.group);
+            imageView = (ImageView) groupView.findViewById(R.id.image);
+        }
+    }
+
+    static class ChildHolder extends PrefetchingExpandableListAdapter.RowHolder {
+        final TextView textName;
+        final TextView textAge;
+        final TextView textAddress;
+        final ImageView imageView;
+
+        ChildHolder(View childView) {
+            super(childView);
+            textName = (TextView) childView.findViewById(R.id.name);
+            textAge = (TextView) childView.findViewById(R.id.age);
+            textAddress = (TextView) childView.findViewById(R.id.address);
+            imageView = (ImageView) childView.findViewById(R.id.image);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.ryg.expandable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.ryg.expandable.ui.PinnedHeaderExpandableListView;
+import com.ryg.expandable.ui.PinnedHeaderExpandableListView.OnHeaderUpdateListener;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AbsListView.LayoutParams;
+
+/***
+ * 分页加载的示例: 每个 group 有几千个子元素, 子元素按页在后台加载, 加载有时会失败
+ */
+public class PagedActivity extends Activity implements OnHeaderUpdateListener, AbsListView.OnScrollListener {
+    private static final int GROUP_COUNT = 20;
+    private static final int CHILDREN_PER_GROUP = 2000;
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 10;
+
+    private PinnedHeaderExpandableListView expandableListView;
+    private List<Group> groupList;
+    private PagedExpandableListAdapter adapter;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.paged);
+        expandableListView = (PinnedHeaderExpandableListView) findViewById(R.id.expandablelist);
+        initData();
+
+        adapter = new PagedExpandableListAdapter(this, groupList, new SlowPeopleDataSource(), PAGE_SIZE, MAX_PAGES);
+        expandableListView.setAdapter(adapter);
+        expandableListView.expandAll();
+        expandableListView.setOnHeaderUpdateListener(this);
+        expandableListView.setOnScrollListener(this);
+    }
+
+    void initData() {
+        groupList = new ArrayList<Group>();
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            Group group = new Group();
+            group.setId(i);
+            group.setTitle("group-" + i);
+            group.setChildCount(CHILDREN_PER_GROUP);
+            groupList.add(group);
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
+    // 屏幕上的页不会被 adapter 丢弃
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (visibleItemCount == 0) {
+            return;
+        }
+        adapter.setVisibleRange(expandableListView.getExpandableListPosition(firstVisibleItem),
+                expandableListView.getExpandableListPosition(firstVisibleItem + visibleItemCount - 1));
+    }
+
+    @Override
+    public View getPinnedHeader() {
+        View headerView = (ViewGroup) getLayoutInflater().inflate(R.layout.group, null);
+        headerView.setLayoutParams(new LayoutParams(
+                LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+        headerView.setTag(new MyExpandableListAdapter.GroupHolder(headerView));
+
+        return headerView;
+    }
+
+    @Override
+    public void updatePinnedHeader(View headerView, int firstVisibleGroupPos) {
+        Group firstVisibleGroup = (Group) adapter.getGroup(firstVisibleGroupPos);
+        MyExpandableListAdapter.GroupHolder holder = (MyExpandableListAdapter.GroupHolder) headerView.getTag();
+        if (!TextUtils.equals(holder.textView.getText(), firstVisibleGroup.getTitle())) {
+            holder.textView.setText(firstVisibleGroup.getTitle());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        adapter.release();
+    }
+
+    /**
+     * 模拟网络: 每页要等一会儿, 大约五分之一的请求失败
+     */
+    private static class SlowPeopleDataSource implements PeopleDataSource {
+        private final Random random = new Random();
+
+        @Override
+        public List<People> loadChildren(Group group, int groupPosition, int start, int count) {
+            SystemClock.sleep(300);
+            if (random.nextInt(5) == 0) {
+                throw new IllegalStateException("load failed: " + group.getTitle() + " from " + start);
+            }
+            List<People> children = new ArrayList<People>(count);
+            for (int i = start; i < start + count; i++) {
+                People people = new People();
+                people.setId(group.getId() * CHILDREN_PER_GROUP + i);
+                people.setName(group.getTitle() + "-" + i);
+                people.setAge(20 + i % 40);
+                people.setAddress("sh-" + i);
+                children.add(people);
+            }
+            return children;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.ryg.expandable;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseExpandableListAdapter;
+import android.widget.ExpandableListView;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/***
+ * 分页加载的数据源
+ * <p>
+ * group 的元数据(标题和子元素个数)一开始就全部给出, 子元素按页在后台加载:
+ * 第一次显示到某一页时加载这一页并预取前后各一页, 没加载出来的子元素先显示占位.
+ * 内存里最多保留 maxPages 页, 最久没有显示过的页先被丢弃; 通过 {@link #setVisibleRange(long, long)}
+ * 告诉 adapter 屏幕上的范围后, 屏幕上的页和前后预取的页不会被丢弃, 避免丢弃后马上又重新加载.
+ * 加载失败的页在一段时间后重试, 连续失败时间隔加倍.
+ */
+public class PagedExpandableListAdapter extends BaseExpandableListAdapter {
+    private final LayoutInflater inflater;
+    private final List<Group> groupList;
+    private final PeopleDataSource dataSource;
+    private final int pageSize;
+    private final int maxPages;
+    private final String loadingText;
+
+    // key 为 group 和页号拼成的 long, 按访问顺序排列, 用来淘汰最久没显示的页
+    private final LinkedHashMap<Long, List<People>> pages;
+    // 正在加载的页
+    private final Set<Long> pendingPages = new HashSet<Long>();
+    // 加载失败、等待重试的页, 重试之前不再加载
+    private final Set<Long> failedPages = new HashSet<Long>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // release 之后丢弃还在路上的加载结果
+    private int generation;
+    // 一帧内到达的多页只通知一次列表
+    private static final long NOTIFY_DELAY = 16;
+    private boolean notifyScheduled;
+    private final Runnable notifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            notifyScheduled = false;
+            notifyDataSetChanged();
+        }
+    };
+    // 重试间隔从 RETRY_DELAY 开始, 连续失败时加倍, 最长 MAX_RETRY_DELAY
+    private static final long RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 32000;
+    private long retryDelay = RETRY_DELAY;
+    private boolean retryScheduled;
+    private final Runnable retryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            retryScheduled = false;
+            boolean visible = false;
+            for (Long key : failedPages) {
+                if (isPagePinned(key)) {
+                    visible = true;
+                    break;
+                }
+            }
+            failedPages.clear();
+            // 屏幕上有失败的页时重新绑定, 绑定时重新加载; 不在屏幕上的页等下次显示到时再加载
+            if (visible) {
+                notifyDataSetChanged();
+            }
+        }
+    };
+
+    // 屏幕上第一行和最后一行的位置, 没有设置时为 -1
+    private int firstVisibleGroup = -1;
+    private int firstVisiblePage;
+    private int lastVisibleGroup = -1;
+    private int lastVisiblePage;
+
+    /**
+     * @param pageSize 每页的子元素个数
+     * @param maxPages 内存中最多保留的页数, 至少要能放下一屏加上前后预取的页
+     */
+    public PagedExpandableListAdapter(Context context, List<Group> groupList,
+                                      PeopleDataSource dataSource, int pageSize, int maxPages) {
+        if (pageSize <= 0 || maxPages < 3) {
+            throw new IllegalArgumentException("pageSize must be positive and maxPages at least 3");
+        }
+        inflater = LayoutInflater.from(context);
+        loadingText = context.getString(R.string.loading);
+        this.groupList = groupList;
+        this.dataSource = dataSource;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        pages = new LinkedHashMap<Long, List<People>>(maxPages * 4 / 3 + 1, 0.75f, true);
+    }
+
+    @Override
+    public int getGroupCount() {
+        return groupList.size();
+    }
+
+    @Override
+    public int getChildrenCount(int groupPosition) {
+        return groupList.get(groupPosition).getChildCount();
+    }
+
+    @Override
+    public Object getGroup(int groupPosition) {
+        return groupList.get(groupPosition);
+    }
+
+    /**
+     * @return 子元素, 所在的页还没加载出来时返回 null 并开始加载
+     */
+    @Override
+    public Object getChild(int groupPosition, int childPosition) {
+        int page = childPosition / pageSize;
+        List<People> children = pages.get(pageKey(groupPosition, page));
+        if (children == null) {
+            requestPage(groupPosition, page);
+        }
+        // 预取相邻的页
+        if (page > 0) {
+            requestPage(groupPosition, page - 1);
+        }
+        if ((page + 1) * pageSize < getChildrenCount(groupPosition)) {
+            requestPage(groupPosition, page + 1);
+        }
+        if (children == null) {
+            return null;
+        }
+        int index = childPosition - page * pageSize;
+        return index < children.size() ? children.get(index) : null;
+    }
+
+    @Override
+    public long getGroupId(int groupPosition) {
+        return groupList.get(groupPosition).getId();
+    }
+
+    @Override
+    public long getChildId(int groupPosition, int childPosition) {
+        return childPosition;
+    }
+
+    /**
+     * 还没加载出来的子元素没有 id, 子元素的 id 只能用位置代替, 所以 id 不是稳定的
+     */
+    @Override
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    @Override
+    public View getGroupView(int groupPosition, boolean isExpanded,
+                             View convertView, ViewGroup parent) {
+        MyExpandableListAdapter.GroupHolder groupHolder;
+        if (convertView == null) {
+            convertView = inflater.inflate(R.layout.group, parent, false);
+            groupHolder = new MyExpandableListAdapter.GroupHolder(convertView);
+            convertView.setTag(groupHolder);
+        } else {
+            groupHolder = (MyExpandableListAdapter.GroupHolder) convertView.getTag();
+        }
+        groupHolder.textView.setText(groupList.get(groupPosition).getTitle());
+        groupHolder.imageView.setImageResource(isExpanded ? R.drawable.expanded : R.drawable.collapse);
+        return convertView;
+    }
+
+    @Override
+    public View getChildView(int groupPosition, int childPosition,
+                             boolean isLastChild, View convertView, ViewGroup parent) {
+        MyExpandableListAdapter.ChildHolder childHolder;
+        if (convertView == null) {
+            convertView = inflater.inflate(R.layout.child, parent, false);
+            childHolder = new MyExpandableListAdapter.ChildHolder(convertView);
+            convertView.setTag(childHolder);
+        } else {
+            childHolder = (MyExpandableListAdapter.ChildHolder) convertView.getTag();
+        }
+
+        People people = (People) getChild(groupPosition, childPosition);
+        if (people == null) {
+            // 占位
+            childHolder.textName.setText(loadingText);
+            childHolder.textAge.setText(null);
+            childHolder.textAddress.setText(null);
+        } else {
+            childHolder.textName.setText(people.getName());
+            childHolder.textAge.setText(String.valueOf(people.getAge()));
+            childHolder.textAddress.setText(people.getAddress());
+        }
+        return convertView;
+    }
+
+    @Override
+    public boolean isChildSelectable(int groupPosition, int childPosition) {
+        return true;
+    }
+
+    /**
+     * 设置屏幕上第一行和最后一行的位置, 在列表滚动时调用
+     * <p>
+     * 这个范围内的页(加上前后预取的页)不会被丢弃, 丢弃的只是已经滚出屏幕的页, 所以屏幕上的页
+     * 超过 maxPages 时内存里的页数也可以暂时超过 maxPages.
+     *
+     * @param firstPackedPosition 第一行的 packed position, 见 {@link ExpandableListView#getExpandableListPosition(int)}
+     * @param lastPackedPosition  最后一行的 packed position
+     */
+    public void setVisibleRange(long firstPackedPosition, long lastPackedPosition) {
+        if (firstPackedPosition == ExpandableListView.PACKED_POSITION_VALUE_NULL
+                || lastPackedPosition == ExpandableListView.PACKED_POSITION_VALUE_NULL) {
+            firstVisibleGroup = -1;
+            lastVisibleGroup = -1;
+            return;
+        }
+        firstVisibleGroup = ExpandableListView.getPackedPositionGroup(firstPackedPosition);
+        int firstChild = ExpandableListView.getPackedPositionChild(firstPackedPosition);
+        // 第一行是 group 时, 它的子元素从第一页开始都可能在屏幕上
+        firstVisiblePage = firstChild < 0 ? 0 : firstChild / pageSize;
+        lastVisibleGroup = ExpandableListView.getPackedPositionGroup(lastPackedPosition);
+        int lastChild = ExpandableListView.getPackedPositionChild(lastPackedPosition);
+        // 最后一行是 group 时, 它的子元素都不在屏幕上
+        lastVisiblePage = lastChild < 0 ? -1 : lastChild / pageSize;
+    }
+
+    /**
+     * 停止后台加载, 页面销毁时调用
+     */
+    public void release() {
+        generation++;
+        executor.shutdownNow();
+        pendingPages.clear();
+        failedPages.clear();
+        handler.removeCallbacks(notifyRunnable);
+        handler.removeCallbacks(retryRunnable);
+        notifyScheduled = false;
+        retryScheduled = false;
+    }
+
+    private void requestPage(final int groupPosition, final int page) {
+        final Long key = pageKey(groupPosition, page);
+        if (pages.containsKey(key) || pendingPages.contains(key) || failedPages.contains(key)
+                || executor.isShutdown()) {
+            return;
+        }
+        pendingPages.add(key);
+        final Group group = groupList.get(groupPosition);
+        final int start = page * pageSize;
+        final int count = Math.min(pageSize, group.getChildCount() - start);
+        final int requestGeneration = generation;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<People> loaded;
+                try {
+                    loaded = dataSource.loadChildren(group, groupPosition, start, count);
+                } catch (RuntimeException e) {
+                    // 加载失败, 稍后重试
+                    loaded = null;
+                }
+                final List<People> children = loaded;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration != generation) {
+                            return;
+                        }
+                        pendingPages.remove(key);
+                        if (children == null) {
+                            failedPages.add(key);
+                            scheduleRetry();
+                            return;
+                        }
+                        retryDelay = RETRY_DELAY;
+                        pages.put(key, children);
+                        trimPages();
+                        // 不在屏幕上的页不用重新绑定
+                        if (firstVisibleGroup < 0 || isPagePinned(key)) {
+                            scheduleNotify();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void scheduleNotify() {
+        if (!notifyScheduled) {
+            notifyScheduled = true;
+            handler.postDelayed(notifyRunnable, NOTIFY_DELAY);
+        }
+    }
+
+    private void scheduleRetry() {
+        if (!retryScheduled) {
+            retryScheduled = true;
+            handler.postDelayed(retryRunnable, retryDelay);
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        }
+    }
+
+    // 丢弃最久没显示过的页, 跳过屏幕上的页
+    private void trimPages() {
+        int size = pages.size();
+        Iterator<Long> iterator = pages.keySet().iterator();
+        while (size > maxPages && iterator.hasNext()) {
+            if (!isPagePinned(iterator.next())) {
+                iterator.remove();
+                size--;
+            }
+        }
+    }
+
+    /**
+     * @return 页在屏幕上或者是屏幕两端预取的页时返回 true
+     */
+    private boolean isPagePinned(long key) {
+        int groupPosition = (int) (key >>> 32);
+        int page = (int) key;
+        if (firstVisibleGroup < 0 || groupPosition < firstVisibleGroup || groupPosition > lastVisibleGroup) {
+            return false;
+        }
+        if (groupPosition == firstVisibleGroup && page < firstVisiblePage - 1) {
+            return false;
+        }
+        return groupPosition != lastVisibleGroup || page <= lastVisiblePage + 1;
+    }
+
+    private static Long pageKey(int groupPosition, int page) {
+        return ((long) groupPosition << 32) | (page & 0xffffffffL);
+    }
+}
@@ -2,10 +2,20 @@ package com.ryg.expandable;
 
 public class People {
 
+    private long id;
     private String name;
     private int age;
     private String address;
 
+    // 稳定的 id, 数据更新前后同一个人的 id 不变
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,14 @@
+package com.ryg.expandable;
+
+import java.util.List;
+
+/***
+ * 分页数据源, 在后台线程调用
+ */
+public interface PeopleDataSource {
+
+    /**
+     * 加载 group 下从 start 开始的最多 count 个子元素
+     */
+    public List<People> loadChildren(Group group, int groupPosition, int start, int count);
+}
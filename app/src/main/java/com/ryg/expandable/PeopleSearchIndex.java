@@ -0,0 +1,184 @@
+package com.ryg.expandable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ * 子元素姓名和地址的前缀索引
+ * <p>
+ * 姓名和地址按非字母数字的字符切成小写的词, 每个词记下出现在哪些子元素里.
+ * 子元素按 group 的顺序编号, 查询结果是编号的 BitSet, 可以直接还原成过滤后的 group 结构.
+ * 在后台线程建立和查询, 建立之后不再修改.
+ */
+class PeopleSearchIndex {
+    // 判断查询是否已经过时, 过时的话提前结束
+    interface CancellationSignal {
+        boolean isCanceled();
+    }
+
+    // 升序、不重复的词
+    private final String[] tokens;
+    // postings[i] 是包含 tokens[i] 的子元素编号, 升序
+    private final int[][] postings;
+    // groupStarts[g] 是第 g 个 group 的第一个子元素的编号, 最后一个元素是子元素总数
+    private final int[] groupStarts;
+
+    private PeopleSearchIndex(String[] tokens, int[][] postings, int[] groupStarts) {
+        this.tokens = tokens;
+        this.postings = postings;
+        this.groupStarts = groupStarts;
+    }
+
+    static PeopleSearchIndex build(List<Group> groupList, List<? extends List<People>> childList) {
+        int groupCount = groupList.size();
+        int[] groupStarts = new int[groupCount + 1];
+        Map<String, IntList> tokenMap = new HashMap<String, IntList>();
+        List<String> words = new ArrayList<String>();
+        int id = 0;
+        for (int g = 0; g < groupCount; g++) {
+            groupStarts[g] = id;
+            List<People> children = childList.get(g);
+            for (int c = 0, childCount = children.size(); c < childCount; c++, id++) {
+                People people = children.get(c);
+                words.clear();
+                tokenize(people.getName(), words);
+                tokenize(people.getAddress(), words);
+                for (int i = 0, size = words.size(); i < size; i++) {
+                    IntList list = tokenMap.get(words.get(i));
+                    if (list == null) {
+                        list = new IntList();
+                        tokenMap.put(words.get(i), list);
+                    }
+                    // 同一个子元素里重复的词只记一次, 编号是递增的, 和最后一个比较就够了
+                    list.addIfNotLast(id);
+                }
+            }
+        }
+        groupStarts[groupCount] = id;
+
+        String[] tokens = tokenMap.keySet().toArray(new String[tokenMap.size()]);
+        Arrays.sort(tokens);
+        int[][] postings = new int[tokens.length][];
+        for (int i = 0; i < tokens.length; i++) {
+            postings[i] = tokenMap.get(tokens[i]).toArray();
+        }
+        return new PeopleSearchIndex(tokens, postings, groupStarts);
+    }
+
+    int getChildCount() {
+        return groupStarts[groupStarts.length - 1];
+    }
+
+    int getGroupCount() {
+        return groupStarts.length - 1;
+    }
+
+    /**
+     * @return 第 groupPosition 个 group 的第一个子元素的编号
+     */
+    int getGroupStart(int groupPosition) {
+        return groupStarts[groupPosition];
+    }
+
+    /**
+     * 查找每个查询词都能匹配到某个词的前缀的子元素
+     *
+     * @param terms      小写的查询词, 不能为空
+     * @param candidates 不为 null 时只在这些子元素里查找, 用于在上一次的结果上继续输入
+     * @return 匹配的子元素编号, 被取消时返回 null
+     */
+    BitSet search(String[] terms, BitSet candidates, CancellationSignal signal) {
+        BitSet result = null;
+        for (String term : terms) {
+            BitSet termMatches = new BitSet(getChildCount());
+            int from = lowerBound(term);
+            for (int i = from; i < tokens.length && tokens[i].startsWith(term); i++) {
+                if (signal.isCanceled()) {
+                    return null;
+                }
+                for (int childId : postings[i]) {
+                    termMatches.set(childId);
+                }
+            }
+            if (result == null) {
+                result = termMatches;
+                if (candidates != null) {
+                    result.and(candidates);
+                }
+            } else {
+                result.and(termMatches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把查询切成小写的词
+     */
+    static String[] splitQuery(String query) {
+        List<String> words = new ArrayList<String>();
+        tokenize(query, words);
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static void tokenize(String text, List<String> out) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0, length = text.length(); i <= length; i++) {
+            boolean isWordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.US));
+                start = -1;
+            }
+        }
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addIfNotLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                int[] newValues = new int[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            int[] array = new int[size];
+            System.arraycopy(values, 0, array, 0, size);
+            return array;
+        }
+    }
+}
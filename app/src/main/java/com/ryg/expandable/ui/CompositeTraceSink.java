@@ -0,0 +1,108 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.ui;
+
+/**
+ * 把打点同时交给多个 TraceSink, 比如 debug 包里的 {@link FrameBudgetChecker} 和线上的 {@link JankMonitor}
+ * <p>
+ * 控件只持有一个 TraceSink, 用 {@link #add} 和 {@link #remove} 在已有的 TraceSink 上增减, 不会把别人设置的替换掉.
+ * 对象创建后不再修改, 增减时返回新的对象.
+ */
+public final class CompositeTraceSink implements TraceSink {
+    private final TraceSink[] mSinks;
+
+    private CompositeTraceSink(TraceSink[] sinks) {
+        mSinks = sinks;
+    }
+
+    /**
+     * @param sink  控件当前的 TraceSink, 可以为 null
+     * @param added 要加入的 TraceSink
+     * @return 同时通知两者的 TraceSink, 已经包含 added 时返回 sink 本身
+     */
+    public static TraceSink add(TraceSink sink, TraceSink added) {
+        if (sink == null || sink == added) {
+            return added;
+        }
+        if (added == null) {
+            return sink;
+        }
+        if (sink instanceof CompositeTraceSink) {
+            TraceSink[] sinks = ((CompositeTraceSink) sink).mSinks;
+            for (TraceSink s : sinks) {
+                if (s == added) {
+                    return sink;
+                }
+            }
+            TraceSink[] newSinks = new TraceSink[sinks.length + 1];
+            System.arraycopy(sinks, 0, newSinks, 0, sinks.length);
+            newSinks[sinks.length] = added;
+            return new CompositeTraceSink(newSinks);
+        }
+        return new CompositeTraceSink(new TraceSink[] {sink, added});
+    }
+
+    /**
+     * @param sink    控件当前的 TraceSink, 可以为 null
+     * @param removed 要移除的 TraceSink
+     * @return 去掉 removed 之后的 TraceSink, 没有剩下的时返回 null
+     */
+    public static TraceSink remove(TraceSink sink, TraceSink removed) {
+        if (sink == removed) {
+            return null;
+        }
+        if (!(sink instanceof CompositeTraceSink)) {
+            return sink;
+        }
+        TraceSink[] sinks = ((CompositeTraceSink) sink).mSinks;
+        int index = -1;
+        for (int i = 0; i < sinks.length; i++) {
+            if (sinks[i] == removed) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return sink;
+        }
+        if (sinks.length == 2) {
+            return sinks[1 - index];
+        }
+        TraceSink[] newSinks = new TraceSink[sinks.length - 1];
+        System.arraycopy(sinks, 0, newSinks, 0, index);
+        System.arraycopy(sinks, index + 1, newSinks, index, sinks.length - index - 1);
+        return new CompositeTraceSink(newSinks);
+    }
+
+    @Override
+    public void onTraceEvent(int event, long durationNanos) {
+        for (TraceSink sink : mSinks) {
+            sink.onTraceEvent(event, durationNanos);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.widget.ExpandableListAdapter;
+
+import com.ryg.expandable.core.ExpandableStructure;
+
+/**
+ * 把 ExpandableListAdapter 交给 core 模块里的位置索引使用
+ */
+class ExpandableAdapterStructure implements ExpandableStructure {
+    private final ExpandableListAdapter mAdapter;
+
+    ExpandableAdapterStructure(ExpandableListAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    @Override
+    public int getGroupCount() {
+        return mAdapter.getGroupCount();
+    }
+
+    @Override
+    public int getChildrenCount(int groupPosition) {
+        return mAdapter.getChildrenCount(groupPosition);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.ui;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.view.AbsSavedState;
+import android.view.View;
+import android.widget.ExpandableListAdapter;
+import android.widget.ExpandableListView;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * 构造 ExpandableListView 自己的 SavedState, 一次交给它所有展开的 group
+ * <p>
+ * ExpandableListView 恢复状态时把展开的 group 列表整个交给 ExpandableListConnector, 只刷新一遍;
+ * expandGroup 则是每展开一个 group 都刷新一遍列表并通知一次. SavedState 和它保存的 GroupMetadata
+ * 都不是公开的类, 这里按它们写入 Parcel 的格式写一遍, 再用框架自己的 CREATOR 读出来.
+ * 格式对不上时返回 null, 调用方退回逐个展开/折叠.
+ */
+final class ExpandableListSavedState {
+    private static final String SAVED_STATE_CLASS = "android.widget.ExpandableListView$SavedState";
+    private static final String GROUP_METADATA_CLASS = "android.widget.ExpandableListConnector$GroupMetadata";
+
+    private ExpandableListSavedState() {
+    }
+
+    /**
+     * 把 ExpandableListView 保存的状态里展开的 group 换成 expandedGroups, 列表自己的状态(滚动位置等)保持不变
+     *
+     * @param frameworkState ExpandableListView#onSaveInstanceState 的返回值
+     * @param expandedGroups 展开的 group, 不能超出 group 的个数
+     * @return 新的状态, 不能构造时返回 null
+     */
+    static Parcelable create(Parcelable frameworkState, ExpandableListAdapter adapter, BitSet expandedGroups) {
+        if (frameworkState == null || !SAVED_STATE_CLASS.equals(frameworkState.getClass().getName())) {
+            return null;
+        }
+        ClassLoader classLoader = ExpandableListView.class.getClassLoader();
+        Parcel parcel = Parcel.obtain();
+        try {
+            // GroupMetadata: 扁平位置由 ExpandableListConnector 恢复时重新计算, 和 expandGroup 一样先写 -1
+            int size = expandedGroups.cardinality();
+            for (int i = expandedGroups.nextSetBit(0); i >= 0; i = expandedGroups.nextSetBit(i + 1)) {
+                parcel.writeString(GROUP_METADATA_CLASS);
+                parcel.writeInt(-1);
+                parcel.writeInt(-1);
+                parcel.writeInt(i);
+                parcel.writeLong(adapter.getGroupId(i));
+            }
+            parcel.setDataPosition(0);
+            ArrayList<Parcelable> metadataList = new ArrayList<Parcelable>(size);
+            for (int i = 0; i < size; i++) {
+                Parcelable metadata = parcel.readParcelable(classLoader);
+                if (metadata == null || !GROUP_METADATA_CLASS.equals(metadata.getClass().getName())) {
+                    return null;
+                }
+                metadataList.add(metadata);
+            }
+            if (parcel.dataPosition() != parcel.dataSize()) {
+                return null;
+            }
+
+            // SavedState: BaseSavedState 的部分和框架自己写的一样, 后面跟着展开的 group 列表
+            parcel.setDataPosition(0);
+            parcel.setDataSize(0);
+            parcel.writeString(SAVED_STATE_CLASS);
+            new View.BaseSavedState(((AbsSavedState) frameworkState).getSuperState()).writeToParcel(parcel, 0);
+            parcel.writeList(metadataList);
+            parcel.setDataPosition(0);
+            Parcelable state = parcel.readParcelable(classLoader);
+            if (state == null || state.getClass() != frameworkState.getClass()
+                    || parcel.dataPosition() != parcel.dataSize()) {
+                return null;
+            }
+            return state;
+        } catch (RuntimeException e) {
+            // 类或格式在这个系统版本上对不上
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
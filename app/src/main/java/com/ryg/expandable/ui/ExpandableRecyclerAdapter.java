@@ -0,0 +1,252 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.database.DataSetObserver;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ExpandableListAdapter;
+import android.widget.FrameLayout;
+import android.widget.HeterogeneousExpandableList;
+
+import com.ryg.expandable.core.GroupPositionIndex;
+import com.ryg.expandable.core.PinnedHeaderLayout;
+
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * 把 ExpandableListAdapter 展开成 RecyclerView 的扁平列表
+ * <p>
+ * 行 View 仍然由 getGroupView/getChildView 创建和绑定, 已有的 adapter 不需要修改.
+ * 展开/折叠只通知插入或删除对应的子元素, RecyclerView 可以做局部刷新和动画.
+ */
+class ExpandableRecyclerAdapter extends RecyclerView.Adapter<ExpandableRecyclerAdapter.ItemHolder> {
+    private final ExpandableListAdapter mAdapter;
+    private final ExpandableAdapterStructure mAdapterStructure;
+    private final BitSet mExpandedGroups = new BitSet();
+    // 展开的 group 的 id, adapter 有稳定 id 时数据变化后按 id 重新对应展开状态
+    private final HashSet<Long> mExpandedGroupIds = new HashSet<Long>();
+    private final GroupPositionIndex mGroupIndex = new GroupPositionIndex();
+    private final PinnedHeaderLayout mHeaderLayout = new PinnedHeaderLayout(mGroupIndex);
+    private boolean mGroupIndexDirty = true;
+    private final int mGroupTypeCount;
+    private View.OnClickListener mItemClickListener;
+
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            remapExpandedGroups();
+            mGroupIndexDirty = true;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            remapExpandedGroups();
+            mGroupIndexDirty = true;
+            notifyDataSetChanged();
+        }
+    };
+
+    ExpandableRecyclerAdapter(ExpandableListAdapter adapter) {
+        mAdapter = adapter;
+        mAdapterStructure = new ExpandableAdapterStructure(adapter);
+        mGroupTypeCount = adapter instanceof HeterogeneousExpandableList
+                ? ((HeterogeneousExpandableList) adapter).getGroupTypeCount() : 1;
+        setHasStableIds(adapter.hasStableIds());
+    }
+
+    ExpandableListAdapter getExpandableListAdapter() {
+        return mAdapter;
+    }
+
+    void setOnItemClickListener(View.OnClickListener listener) {
+        mItemClickListener = listener;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        mAdapter.registerDataSetObserver(mDataSetObserver);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        mAdapter.unregisterDataSetObserver(mDataSetObserver);
+    }
+
+    GroupPositionIndex getGroupIndex() {
+        if (mGroupIndexDirty) {
+            mGroupIndex.rebuild(mAdapterStructure, mExpandedGroups, 0);
+            mGroupIndexDirty = false;
+        }
+        return mGroupIndex;
+    }
+
+    PinnedHeaderLayout getHeaderLayout() {
+        getGroupIndex();
+        return mHeaderLayout;
+    }
+
+    boolean isGroupExpanded(int groupPosition) {
+        return mExpandedGroups.get(groupPosition);
+    }
+
+    boolean expandGroup(int groupPosition) {
+        if (mExpandedGroups.get(groupPosition)) {
+            return false;
+        }
+        int flatPos = getGroupIndex().getFlatPosition(groupPosition);
+        mExpandedGroups.set(groupPosition);
+        if (mAdapter.hasStableIds()) {
+            mExpandedGroupIds.add(mAdapter.getGroupId(groupPosition));
+        }
+        mGroupIndex.setGroupExpanded(groupPosition, true, mAdapter.getChildrenCount(groupPosition));
+        notifyItemChanged(flatPos);
+        notifyItemRangeInserted(flatPos + 1, mAdapter.getChildrenCount(groupPosition));
+        mAdapter.onGroupExpanded(groupPosition);
+        return true;
+    }
+
+    boolean collapseGroup(int groupPosition) {
+        if (!mExpandedGroups.get(groupPosition)) {
+            return false;
+        }
+        int flatPos = getGroupIndex().getFlatPosition(groupPosition);
+        mExpandedGroups.clear(groupPosition);
+        if (mAdapter.hasStableIds()) {
+            mExpandedGroupIds.remove(mAdapter.getGroupId(groupPosition));
+        }
+        mGroupIndex.setGroupExpanded(groupPosition, false, mAdapter.getChildrenCount(groupPosition));
+        notifyItemChanged(flatPos);
+        notifyItemRangeRemoved(flatPos + 1, mAdapter.getChildrenCount(groupPosition));
+        mAdapter.onGroupCollapsed(groupPosition);
+        return true;
+    }
+
+    /**
+     * 数据变化后让展开状态跟着 group 走, 和 ExpandableListView 一样:
+     * 有稳定 id 时按 id 重新对应, 被删除的 group 不再记录; 否则保留原来的位置, 去掉超出 group 个数的部分
+     */
+    private void remapExpandedGroups() {
+        int groupCount = mAdapter.getGroupCount();
+        if (!mAdapter.hasStableIds()) {
+            mExpandedGroupIds.clear();
+            mExpandedGroups.clear(groupCount, Math.max(groupCount, mExpandedGroups.length()));
+            return;
+        }
+        mExpandedGroups.clear();
+        if (mExpandedGroupIds.isEmpty()) {
+            return;
+        }
+        HashSet<Long> remainingIds = new HashSet<Long>();
+        for (int i = 0; i < groupCount; i++) {
+            Long id = mAdapter.getGroupId(i);
+            if (mExpandedGroupIds.contains(id)) {
+                mExpandedGroups.set(i);
+                remainingIds.add(id);
+            }
+        }
+        mExpandedGroupIds.retainAll(remainingIds);
+    }
+
+    /**
+     * @return 扁平位置对应的 group, 位置无效时返回 -1
+     */
+    int getGroupPosition(int flatPos) {
+        return getGroupIndex().getGroupForFlatPosition(flatPos);
+    }
+
+    /**
+     * @return 扁平位置对应的子元素在 group 里的索引, 是 group 本身时返回 -1
+     */
+    int getChildPosition(int flatPos, int groupPosition) {
+        return getGroupIndex().getChildPosition(flatPos, groupPosition);
+    }
+
+    @Override
+    public int getItemCount() {
+        return getGroupIndex().getItemCount();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        int groupPos = getGroupPosition(position);
+        int childPos = getChildPosition(position, groupPos);
+        if (!(mAdapter instanceof HeterogeneousExpandableList)) {
+            return childPos < 0 ? 0 : 1;
+        }
+        HeterogeneousExpandableList adapter = (HeterogeneousExpandableList) mAdapter;
+        return childPos < 0 ? adapter.getGroupType(groupPos)
+                : mGroupTypeCount + adapter.getChildType(groupPos, childPos);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        int groupPos = getGroupPosition(position);
+        int childPos = getChildPosition(position, groupPos);
+        long groupId = mAdapter.getGroupId(groupPos);
+        return childPos < 0 ? mAdapter.getCombinedGroupId(groupId)
+                : mAdapter.getCombinedChildId(groupId, mAdapter.getChildId(groupPos, childPos));
+    }
+
+    @Override
+    public ItemHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // 创建时还不知道位置, 行 View 在第一次绑定时由 getGroupView/getChildView 创建
+        FrameLayout container = new FrameLayout(parent.getContext());
+        container.setLayoutParams(new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        container.setOnClickListener(mItemClickListener);
+        return new ItemHolder(container);
+    }
+
+    @Override
+    public void onBindViewHolder(ItemHolder holder, int position) {
+        int groupPos = getGroupPosition(position);
+        int childPos = getChildPosition(position, groupPos);
+        FrameLayout container = (FrameLayout) holder.itemView;
+        View convertView = container.getChildCount() > 0 ? container.getChildAt(0) : null;
+        View view;
+        if (childPos < 0) {
+            view = mAdapter.getGroupView(groupPos, mExpandedGroups.get(groupPos), convertView, container);
+        } else {
+            boolean isLastChild = childPos == mAdapter.getChildrenCount(groupPos) - 1;
+            view = mAdapter.getChildView(groupPos, childPos, isLastChild, convertView, container);
+        }
+        if (view != convertView) {
+            container.removeAllViews();
+            container.addView(view);
+        }
+    }
+
+    static class ItemHolder extends RecyclerView.ViewHolder {
+        ItemHolder(View itemView) {
+            super(itemView);
+        }
+    }
+}
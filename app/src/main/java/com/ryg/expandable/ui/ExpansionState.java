@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.widget.ExpandableListAdapter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 按 group id 保存的展开状态
+ * <p>
+ * 内存中是升序的 long 数组, 写入 Parcel 时把连续的 id 合并成区间, 区间用变长整数编码;
+ * id 连续时一千个展开的 group 只需要几个字节. 需要 adapter 的 hasStableIds() 返回 true.
+ */
+public final class ExpansionState implements Parcelable {
+    private static final long[] EMPTY = new long[0];
+
+    private final long[] mGroupIds;
+
+    private ExpansionState(long[] sortedGroupIds) {
+        mGroupIds = sortedGroupIds;
+    }
+
+    /**
+     * 记录当前展开的 group 的 id
+     *
+     * @param expandedGroups 展开的 group 的位置
+     */
+    public static ExpansionState capture(ExpandableListAdapter adapter, BitSet expandedGroups) {
+        int groupCount = adapter.getGroupCount();
+        long[] groupIds = new long[expandedGroups.cardinality()];
+        int size = 0;
+        for (int i = expandedGroups.nextSetBit(0); i >= 0 && i < groupCount; i = expandedGroups.nextSetBit(i + 1)) {
+            groupIds[size++] = adapter.getGroupId(i);
+        }
+        if (size < groupIds.length) {
+            groupIds = copyOf(groupIds, size);
+        }
+        Arrays.sort(groupIds);
+        return new ExpansionState(groupIds);
+    }
+
+    /**
+     * @return 展开的 group 个数
+     */
+    public int size() {
+        return mGroupIds.length;
+    }
+
+    public boolean isGroupExpanded(long groupId) {
+        return Arrays.binarySearch(mGroupIds, groupId) >= 0;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mGroupIds.length);
+        dest.writeByteArray(encode(mGroupIds));
+    }
+
+    public static final Creator<ExpansionState> CREATOR = new Creator<ExpansionState>() {
+        @Override
+        public ExpansionState createFromParcel(Parcel source) {
+            int size = source.readInt();
+            return new ExpansionState(decode(source.createByteArray(), size));
+        }
+
+        @Override
+        public ExpansionState[] newArray(int size) {
+            return new ExpansionState[size];
+        }
+    };
+
+    /**
+     * 每个区间写两个无符号变长整数: 和上一个区间结尾的距离, 区间长度减一
+     */
+    private static byte[] encode(long[] groupIds) {
+        // 每个变长整数最多 10 个字节
+        byte[] buffer = new byte[groupIds.length * 20];
+        int offset = 0;
+        long previousEnd = 0;
+        int i = 0;
+        while (i < groupIds.length) {
+            long start = groupIds[i];
+            int runEnd = i;
+            while (runEnd + 1 < groupIds.length && groupIds[runEnd + 1] == groupIds[runEnd] + 1) {
+                runEnd++;
+            }
+            offset = writeVarLong(buffer, offset, start - previousEnd);
+            offset = writeVarLong(buffer, offset, runEnd - i);
+            previousEnd = groupIds[runEnd];
+            i = runEnd + 1;
+        }
+        byte[] data = new byte[offset];
+        System.arraycopy(buffer, 0, data, 0, offset);
+        return data;
+    }
+
+    private static long[] decode(byte[] data, int size) {
+        if (size == 0 || data == null) {
+            return EMPTY;
+        }
+        long[] groupIds = new long[size];
+        int count = 0;
+        long previousEnd = 0;
+        int[] offset = new int[1];
+        while (count < size && offset[0] < data.length) {
+            long start = previousEnd + readVarLong(data, offset);
+            long length = readVarLong(data, offset) + 1;
+            for (long j = 0; j < length && count < size; j++) {
+                groupIds[count++] = start + j;
+            }
+            previousEnd = groupIds[count - 1];
+        }
+        return count == size ? groupIds : copyOf(groupIds, count);
+    }
+
+    // Arrays.copyOf 在 API 9 才有
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static int writeVarLong(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static long readVarLong(byte[] data, int[] offset) {
+        long value = 0;
+        int shift = 0;
+        while (offset[0] < data.length) {
+            byte b = data[offset[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return value;
+    }
+}
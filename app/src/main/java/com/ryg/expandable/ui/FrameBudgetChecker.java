@@ -0,0 +1,213 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.os.Debug;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * 按帧检查打点次数和内存分配次数是否超出预算的 {@link TraceSink}
+ * <p>
+ * 以窗口每次绘制前的 OnPreDrawListener 作为帧的边界, 统计两次绘制之间每种事件发生了多少次,
+ * 超出用 {@link #setBudget} 设置的预算时回调 {@link OnBudgetExceededListener}.
+ * 例如滚动时列表不应该有测量和布局, 可以把 {@link #EVENT_MEASURE} 和 {@link #EVENT_LAYOUT} 的预算设为 0,
+ * 只在滚动时调用 {@link #setEnforcing(boolean)} 打开检查. 可以同时设置给列表、StickyLayout 和 adapter.
+ * <p>
+ * 只能在主线程使用, 一般只在 debug 包里打开. 构建时由 app 模块的 Robolectric 测试按帧检查这些预算,
+ * 这里是在真机上、真实数据下额外检查的可选手段.
+ */
+public class FrameBudgetChecker implements TraceSink, ViewTreeObserver.OnPreDrawListener {
+    private static final String TAG = "FrameBudgetChecker";
+
+    public static final int NO_BUDGET = -1;
+    // OnBudgetExceededListener 里表示超出的是内存分配次数
+    public static final int ALLOCATIONS = EVENT_COUNT;
+
+    public interface OnBudgetExceededListener {
+        /**
+         * @param event  超出预算的事件, EVENT_* 之一或 {@link #ALLOCATIONS}
+         * @param count  这一帧里发生的次数
+         * @param budget 每帧的预算
+         */
+        public void onBudgetExceeded(int event, int count, int budget);
+    }
+
+    private final int[] mBudgets = new int[EVENT_COUNT];
+    private final int[] mFrameCounts = new int[EVENT_COUNT];
+    private int mAllocationBudget = NO_BUDGET;
+    private int mFrameStartAllocCount;
+    private boolean mEnforcing = true;
+    private boolean mStrict;
+    private OnBudgetExceededListener mListener;
+    private View mView;
+    private long mCheckedFrameCount;
+    private long mViolationCount;
+
+    public FrameBudgetChecker() {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mBudgets[i] = NO_BUDGET;
+        }
+    }
+
+    /**
+     * @param event       EVENT_* 之一
+     * @param maxPerFrame 每帧最多允许的次数, {@link #NO_BUDGET} 表示不检查
+     */
+    public void setBudget(int event, int maxPerFrame) {
+        mBudgets[event] = maxPerFrame;
+    }
+
+    /**
+     * 设置每帧主线程最多允许的内存分配次数, 会打开 {@link Debug#startAllocCounting()}
+     *
+     * @param maxPerFrame {@link #NO_BUDGET} 表示不检查
+     */
+    @SuppressWarnings("deprecation")
+    public void setAllocationBudget(int maxPerFrame) {
+        if (maxPerFrame != NO_BUDGET && mAllocationBudget == NO_BUDGET) {
+            Debug.startAllocCounting();
+            mFrameStartAllocCount = Debug.getThreadAllocCount();
+        }
+        mAllocationBudget = maxPerFrame;
+    }
+
+    /**
+     * 是否检查预算, 关闭时只统计不检查; 打开时从下一帧开始检查
+     */
+    public void setEnforcing(boolean enforcing) {
+        if (enforcing && !mEnforcing) {
+            startFrame();
+        }
+        mEnforcing = enforcing;
+    }
+
+    /**
+     * 严格模式下没有设置监听时超出预算直接抛出 IllegalStateException, 否则只打印警告
+     */
+    public void setStrict(boolean strict) {
+        mStrict = strict;
+    }
+
+    public void setOnBudgetExceededListener(OnBudgetExceededListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 开始按 view 所在窗口的绘制分帧
+     */
+    public void attach(View view) {
+        detach();
+        mView = view;
+        view.getViewTreeObserver().addOnPreDrawListener(this);
+        startFrame();
+    }
+
+    @SuppressWarnings("deprecation")
+    public void detach() {
+        // 没有 attach 到窗口时拿到的 ViewTreeObserver 会在 attach 后合并到窗口的里面, 这里重新获取
+        if (mView != null) {
+            ViewTreeObserver observer = mView.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(this);
+            }
+            mView = null;
+        }
+        if (mAllocationBudget != NO_BUDGET) {
+            Debug.stopAllocCounting();
+            mAllocationBudget = NO_BUDGET;
+        }
+    }
+
+    /**
+     * @return 检查过的帧数
+     */
+    public long getCheckedFrameCount() {
+        return mCheckedFrameCount;
+    }
+
+    /**
+     * @return 超出预算的次数
+     */
+    public long getViolationCount() {
+        return mViolationCount;
+    }
+
+    @Override
+    public void onTraceEvent(int event, long durationNanos) {
+        mFrameCounts[event]++;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (mEnforcing) {
+            checkFrame();
+        }
+        startFrame();
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void checkFrame() {
+        mCheckedFrameCount++;
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            if (mBudgets[i] != NO_BUDGET && mFrameCounts[i] > mBudgets[i]) {
+                reportViolation(i, mFrameCounts[i], mBudgets[i]);
+            }
+        }
+        if (mAllocationBudget != NO_BUDGET) {
+            int allocCount = Debug.getThreadAllocCount() - mFrameStartAllocCount;
+            if (allocCount > mAllocationBudget) {
+                reportViolation(ALLOCATIONS, allocCount, mAllocationBudget);
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void startFrame() {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mFrameCounts[i] = 0;
+        }
+        if (mAllocationBudget != NO_BUDGET) {
+            mFrameStartAllocCount = Debug.getThreadAllocCount();
+        }
+    }
+
+    private void reportViolation(int event, int count, int budget) {
+        mViolationCount++;
+        if (mListener != null) {
+            mListener.onBudgetExceeded(event, count, budget);
+            return;
+        }
+        String message = "event " + event + " happened " + count + " times in a frame, budget is " + budget;
+        if (mStrict) {
+            throw new IllegalStateException(message);
+        }
+        Log.w(TAG, message);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.ui;
+
+import android.widget.ExpandableListView;
+import android.widget.SectionIndexer;
+
+/**
+ * 以 group 为 section 的快速滚动索引, 给实现了 SectionIndexer 的 ExpandableListAdapter 转调
+ * <p>
+ * ExpandableListView 上的 FastScroller 把 {@link #getPositionForSection(int)} 的返回值当作 group 的位置,
+ * 再通过 {@link PinnedHeaderExpandableListView#getFlatListPosition(long)} 换成列表里的位置;
+ * 两个方向的换算都走列表的位置索引, 每次查找是 O(log n) 的, 展开/折叠后索引会同步更新.
+ */
+public class GroupSectionIndexer implements SectionIndexer {
+    private static final Object[] EMPTY_SECTIONS = new Object[0];
+
+    private final PinnedHeaderExpandableListView mListView;
+    private Object[] mSections = EMPTY_SECTIONS;
+
+    public GroupSectionIndexer(PinnedHeaderExpandableListView listView) {
+        mListView = listView;
+    }
+
+    /**
+     * 设置每个 group 在滚动条旁边显示的文字, 长度要和 group 的个数一致
+     */
+    public void setSections(Object[] sections) {
+        mSections = sections != null ? sections : EMPTY_SECTIONS;
+    }
+
+    @Override
+    public Object[] getSections() {
+        return mSections;
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        if (mSections.length == 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(sectionIndex, mSections.length - 1));
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        if (mSections.length == 0) {
+            return 0;
+        }
+        // FastScroller 传进来的位置已经减去了列表头部 View 的个数, 位置索引用的是包含头部 View 的位置
+        long packedPos = mListView.getExpandableListPosition(position + mListView.getHeaderViewsCount());
+        if (packedPos == ExpandableListView.PACKED_POSITION_VALUE_NULL) {
+            // 列表的尾部 View
+            return position < 0 ? 0 : mSections.length - 1;
+        }
+        return Math.min(ExpandableListView.getPackedPositionGroup(packedPos), mSections.length - 1);
+    }
+}
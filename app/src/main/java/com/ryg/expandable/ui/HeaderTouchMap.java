@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * 固定头部里所有可点击 View 的区域表
+ * <p>
+ * 在头部绑定或布局之后递归遍历一次整棵 View 树, 把每个可点击 View 换算到头部坐标系下(考虑 scroll、
+ * translation 和 scale, 不考虑旋转), 再按横向分成若干列建立索引. 点击时只查手指所在那一列.
+ */
+class HeaderTouchMap {
+    private static final int COLUMN_COUNT = 8;
+
+    private View mRoot;
+    private boolean mDirty = true;
+    private int mWidth;
+
+    // 区域按先序遍历的顺序保存, 越靠后的越在上层
+    private View[] mViews = new View[16];
+    private float[] mLeft = new float[16];
+    private float[] mTop = new float[16];
+    private float[] mRight = new float[16];
+    private float[] mBottom = new float[16];
+    private int mCount;
+
+    // 每一列包含的区域的下标
+    private final int[][] mColumns = new int[COLUMN_COUNT][16];
+    private final int[] mColumnSizes = new int[COLUMN_COUNT];
+
+    void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * 查找头部坐标系下 (x, y) 处最上层的可点击 View
+     *
+     * @return 找不到时返回头部本身
+     */
+    View findTarget(View root, int x, int y) {
+        if (mDirty || root != mRoot) {
+            build(root);
+        }
+        if (mWidth <= 0 || x < 0 || x >= mWidth) {
+            return root;
+        }
+        int column = x * COLUMN_COUNT / mWidth;
+        int[] regions = mColumns[column];
+        for (int i = mColumnSizes[column] - 1; i >= 0; i--) {
+            int index = regions[i];
+            if (x >= mLeft[index] && x < mRight[index] && y >= mTop[index] && y < mBottom[index]) {
+                return mViews[index];
+            }
+        }
+        return root;
+    }
+
+    private void build(View root) {
+        for (int i = 0; i < mCount; i++) {
+            mViews[i] = null;
+        }
+        mCount = 0;
+        mRoot = root;
+        mWidth = root.getWidth();
+        mDirty = false;
+        if (root instanceof ViewGroup) {
+            collectChildren((ViewGroup) root, 0, 0, 1, 1);
+        }
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            mColumnSizes[column] = 0;
+        }
+        if (mWidth <= 0) {
+            return;
+        }
+        for (int i = 0; i < mCount; i++) {
+            int first = Math.max(0, (int) mLeft[i] * COLUMN_COUNT / mWidth);
+            int last = Math.min(COLUMN_COUNT - 1, (int) Math.ceil(mRight[i]) * COLUMN_COUNT / mWidth);
+            for (int column = first; column <= last; column++) {
+                addToColumn(column, i);
+            }
+        }
+    }
+
+    /**
+     * 头部坐标 = origin + scale * 父 View 里的坐标
+     */
+    private void collectChildren(ViewGroup parent, float originX, float originY, float scaleX, float scaleY) {
+        for (int i = 0, count = parent.getChildCount(); i < count; i++) {
+            View child = parent.getChildAt(i);
+            if (child.getVisibility() != View.VISIBLE) {
+                continue;
+            }
+            float childScaleX = ViewCompat.getScaleX(child);
+            float childScaleY = ViewCompat.getScaleY(child);
+            float pivotX = ViewCompat.getPivotX(child);
+            float pivotY = ViewCompat.getPivotY(child);
+            float left = child.getLeft() - parent.getScrollX() + ViewCompat.getTranslationX(child)
+                    + pivotX * (1 - childScaleX);
+            float top = child.getTop() - parent.getScrollY() + ViewCompat.getTranslationY(child)
+                    + pivotY * (1 - childScaleY);
+            float childOriginX = originX + scaleX * left;
+            float childOriginY = originY + scaleY * top;
+            float childTotalScaleX = scaleX * childScaleX;
+            float childTotalScaleY = scaleY * childScaleY;
+            if (child.isClickable()) {
+                addRegion(child, childOriginX, childOriginY,
+                        childOriginX + childTotalScaleX * child.getWidth(),
+                        childOriginY + childTotalScaleY * child.getHeight());
+            }
+            if (child instanceof ViewGroup) {
+                collectChildren((ViewGroup) child, childOriginX, childOriginY, childTotalScaleX, childTotalScaleY);
+            }
+        }
+    }
+
+    private void addRegion(View view, float left, float top, float right, float bottom) {
+        if (mCount == mViews.length) {
+            int capacity = mCount * 2;
+            View[] views = new View[capacity];
+            System.arraycopy(mViews, 0, views, 0, mCount);
+            mViews = views;
+            mLeft = grow(mLeft, capacity);
+            mTop = grow(mTop, capacity);
+            mRight = grow(mRight, capacity);
+            mBottom = grow(mBottom, capacity);
+        }
+        mViews[mCount] = view;
+        mLeft[mCount] = Math.min(left, right);
+        mTop[mCount] = Math.min(top, bottom);
+        mRight[mCount] = Math.max(left, right);
+        mBottom[mCount] = Math.max(top, bottom);
+        mCount++;
+    }
+
+    private void addToColumn(int column, int index) {
+        int size = mColumnSizes[column];
+        if (size == mColumns[column].length) {
+            int[] regions = new int[size * 2];
+            System.arraycopy(mColumns[column], 0, regions, 0, size);
+            mColumns[column] = regions;
+        }
+        mColumns[column][size] = index;
+        mColumnSizes[column] = size + 1;
+    }
+
+    private static float[] grow(float[] array, int capacity) {
+        float[] result = new float[capacity];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
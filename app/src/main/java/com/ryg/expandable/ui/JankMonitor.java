@@ -0,0 +1,406 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
+import android.widget.ExpandableListAdapter;
+
+/**
+ * 统计滚动、惯性滑动和折叠头部时每一帧的耗时, 可以在线上开着
+ * <p>
+ * 窗口绘制前的 OnPreDrawListener 发现手势开始后, 用 Choreographer 的帧回调逐帧计时,
+ * 相邻两帧的 vsync 时间差就是一帧的耗时; 手指按住不动时没有绘制, 但每个 vsync 仍然有回调,
+ * 这段空闲不会被当成一帧很长的卡顿. Choreographer 在 API 16 才有, 更低的版本上不统计帧耗时.
+ * 每一帧里刷新头部、绑定头部、绑定行 View 和绘制列表的耗时来自控件的打点.
+ * 帧耗时按 1ms 一档放进直方图, 不保存单帧的数据; 某种手势累计到 {@link #setReportFrameCount} 帧后,
+ * 生成一份 {@link Snapshot} 交给 {@link Sink}, 只有这时才分配内存.
+ * <p>
+ * 只能在主线程使用. 用 {@link #setSampleInterval(int)} 只统计一部分手势, 没被抽中的手势只判断状态, 不累计.
+ */
+public class JankMonitor implements TraceSink, ViewTreeObserver.OnPreDrawListener {
+    // 手势的类型
+    public static final int GESTURE_SCROLL = 0;
+    public static final int GESTURE_FLING = 1;
+    public static final int GESTURE_HEADER_COLLAPSE = 2;
+    public static final int GESTURE_COUNT = 3;
+
+    // 一帧里的阶段, 刷新头部的耗时包括绑定头部的耗时
+    public static final int PHASE_REFRESH_HEADER = 0;
+    public static final int PHASE_BIND_HEADER = 1;
+    public static final int PHASE_BIND_ROWS = 2;
+    public static final int PHASE_DRAW = 3;
+    public static final int PHASE_COUNT = 4;
+
+    private static final long NANOS_PER_MS = 1000000L;
+    // 直方图每档 1ms, 最后一档放所有更慢的帧
+    private static final int HISTOGRAM_BUCKETS = 128;
+    private static final int NO_GESTURE = -1;
+
+    public interface Sink {
+        /**
+         * 在主线程回调, 可以保存 snapshot 之后在后台上报
+         */
+        public void onSnapshot(Snapshot snapshot);
+    }
+
+    /**
+     * 一种手势在一段时间内的帧耗时统计
+     */
+    public static class Snapshot {
+        public final int gesture;
+        public final int frameCount;
+        // 超过卡顿阈值的帧数
+        public final int jankyFrameCount;
+        // 帧耗时的分位数, 精度是 1ms
+        public final long p50FrameNanos;
+        public final long p90FrameNanos;
+        public final long p99FrameNanos;
+        public final long maxFrameNanos;
+        // 每个阶段的平均耗时和单帧里的最大耗时, 按 PHASE_* 索引
+        public final long[] phaseAverageNanos;
+        public final long[] phaseMaxNanos;
+
+        Snapshot(int gesture, int frameCount, int jankyFrameCount, long p50FrameNanos, long p90FrameNanos,
+                 long p99FrameNanos, long maxFrameNanos, long[] phaseAverageNanos, long[] phaseMaxNanos) {
+            this.gesture = gesture;
+            this.frameCount = frameCount;
+            this.jankyFrameCount = jankyFrameCount;
+            this.p50FrameNanos = p50FrameNanos;
+            this.p90FrameNanos = p90FrameNanos;
+            this.p99FrameNanos = p99FrameNanos;
+            this.maxFrameNanos = maxFrameNanos;
+            this.phaseAverageNanos = phaseAverageNanos;
+            this.phaseMaxNanos = phaseMaxNanos;
+        }
+    }
+
+    private Sink mSink;
+    private long mJankThresholdNanos = 24 * NANOS_PER_MS;
+    private int mReportFrameCount = 600;
+    private int mSampleInterval = 1;
+
+    private PinnedHeaderExpandableListView mListView;
+    private StickyLayout mStickyLayout;
+    private PrefetchingExpandableListAdapter<?, ?> mAdapter;
+
+    // 当前这一帧的打点
+    private final long[] mFramePhaseNanos = new long[PHASE_COUNT];
+    private boolean mFrameHeaderCollapsed;
+    // 上一帧的 vsync 时间, 0 表示还没有
+    private long mLastFrameNanos;
+    // API 16 以下为 null
+    private final FrameTicker mFrameTicker =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameTicker() : null;
+    private int mLastGesture = NO_GESTURE;
+    private int mGestureCount;
+    private boolean mSampling;
+
+    // 按手势累计
+    private final int[][] mHistograms = new int[GESTURE_COUNT][HISTOGRAM_BUCKETS];
+    private final int[] mFrameCounts = new int[GESTURE_COUNT];
+    private final int[] mJankyFrameCounts = new int[GESTURE_COUNT];
+    private final long[] mMaxFrameNanos = new long[GESTURE_COUNT];
+    private final long[][] mPhaseTotalNanos = new long[GESTURE_COUNT][PHASE_COUNT];
+    private final long[][] mPhaseMaxNanos = new long[GESTURE_COUNT][PHASE_COUNT];
+
+    public void setSink(Sink sink) {
+        mSink = sink;
+    }
+
+    /**
+     * 帧耗时超过这个值算一次卡顿, 默认 24ms, 也就是 60Hz 下超过一帧半
+     */
+    public void setJankThresholdNanos(long jankThresholdNanos) {
+        mJankThresholdNanos = jankThresholdNanos;
+    }
+
+    /**
+     * 某种手势累计多少帧后生成一次 snapshot, 默认 600 帧
+     */
+    public void setReportFrameCount(int reportFrameCount) {
+        mReportFrameCount = Math.max(1, reportFrameCount);
+    }
+
+    /**
+     * 每 interval 次手势统计一次, 默认 1 表示统计所有手势
+     */
+    public void setSampleInterval(int interval) {
+        mSampleInterval = Math.max(1, interval);
+    }
+
+    /**
+     * 开始统计列表和 StickyLayout, 通过 {@link CompositeTraceSink} 和它们已有的 TraceSink 一起接收打点.
+     * 列表的 adapter 是 {@link PrefetchingExpandableListAdapter} 时也统计行 View 的绑定.
+     *
+     * @param stickyLayout 可以为 null
+     */
+    public void attach(PinnedHeaderExpandableListView listView, StickyLayout stickyLayout) {
+        detach();
+        mListView = listView;
+        mStickyLayout = stickyLayout;
+        listView.setTraceSink(CompositeTraceSink.add(listView.getTraceSink(), this));
+        if (stickyLayout != null) {
+            stickyLayout.setTraceSink(CompositeTraceSink.add(stickyLayout.getTraceSink(), this));
+        }
+        ExpandableListAdapter adapter = listView.getExpandableListAdapter();
+        if (adapter instanceof PrefetchingExpandableListAdapter) {
+            mAdapter = (PrefetchingExpandableListAdapter<?, ?>) adapter;
+            mAdapter.setTraceSink(CompositeTraceSink.add(mAdapter.getTraceSink(), this));
+        }
+        listView.getViewTreeObserver().addOnPreDrawListener(this);
+        mLastGesture = NO_GESTURE;
+        startFrame();
+    }
+
+    public void detach() {
+        if (mListView == null) {
+            return;
+        }
+        // 没有 attach 到窗口时拿到的 ViewTreeObserver 会在 attach 后合并到窗口的里面, 这里重新获取
+        ViewTreeObserver observer = mListView.getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.removeOnPreDrawListener(this);
+        }
+        if (mFrameTicker != null) {
+            mFrameTicker.stop();
+        }
+        mListView.setTraceSink(CompositeTraceSink.remove(mListView.getTraceSink(), this));
+        if (mStickyLayout != null) {
+            mStickyLayout.setTraceSink(CompositeTraceSink.remove(mStickyLayout.getTraceSink(), this));
+        }
+        if (mAdapter != null) {
+            mAdapter.setTraceSink(CompositeTraceSink.remove(mAdapter.getTraceSink(), this));
+        }
+        mListView = null;
+        mStickyLayout = null;
+        mAdapter = null;
+    }
+
+    /**
+     * 把还没有上报的统计都生成 snapshot, 比如页面退到后台时调用
+     */
+    public void flush() {
+        for (int gesture = 0; gesture < GESTURE_COUNT; gesture++) {
+            if (mFrameCounts[gesture] > 0) {
+                report(gesture);
+            }
+        }
+    }
+
+    @Override
+    public void onTraceEvent(int event, long durationNanos) {
+        switch (event) {
+            case EVENT_REFRESH_HEADER:
+                mFramePhaseNanos[PHASE_REFRESH_HEADER] += durationNanos;
+                break;
+            case EVENT_BIND_HEADER:
+                mFramePhaseNanos[PHASE_BIND_HEADER] += durationNanos;
+                break;
+            case EVENT_BIND_GROUP_VIEW:
+            case EVENT_BIND_CHILD_VIEW:
+                mFramePhaseNanos[PHASE_BIND_ROWS] += durationNanos;
+                break;
+            case EVENT_DRAW:
+                mFramePhaseNanos[PHASE_DRAW] += durationNanos;
+                break;
+            case EVENT_SET_HEADER_HEIGHT:
+                mFrameHeaderCollapsed = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (mFrameTicker != null && mFrameTicker.mRunning) {
+            // 帧回调在跑, 由它判断手势什么时候结束
+            return true;
+        }
+        int gesture = currentGesture();
+        if (gesture != NO_GESTURE && mLastGesture == NO_GESTURE) {
+            // 新的手势开始, 按间隔抽样, 抽中的手势开始逐帧计时
+            mSampling = mGestureCount++ % mSampleInterval == 0;
+            if (mSampling && mFrameTicker != null) {
+                mLastFrameNanos = 0;
+                mFrameTicker.start();
+            }
+        }
+        mLastGesture = gesture;
+        startFrame();
+        return true;
+    }
+
+    /**
+     * 每个 vsync 回调一次, 手势结束后停止
+     */
+    private void onFrame(long frameTimeNanos) {
+        int gesture = currentGesture();
+        if (gesture == NO_GESTURE) {
+            mFrameTicker.stop();
+            mLastGesture = NO_GESTURE;
+            startFrame();
+            return;
+        }
+        // 上一帧也在手势里时, 两帧的 vsync 时间差才是上一帧的耗时, 这期间的打点都属于上一帧
+        if (mLastGesture != NO_GESTURE && mLastFrameNanos != 0) {
+            recordFrame(gesture, frameTimeNanos - mLastFrameNanos);
+        }
+        mLastGesture = gesture;
+        mLastFrameNanos = frameTimeNanos;
+        startFrame();
+        mFrameTicker.post();
+    }
+
+    private int currentGesture() {
+        if (mListView != null) {
+            int scrollState = mListView.getScrollState();
+            if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) {
+                return GESTURE_FLING;
+            }
+            if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_TOUCH_SCROLL) {
+                return GESTURE_SCROLL;
+            }
+        }
+        if (mFrameHeaderCollapsed || (mStickyLayout != null && mStickyLayout.isHeaderAnimating())) {
+            return GESTURE_HEADER_COLLAPSE;
+        }
+        return NO_GESTURE;
+    }
+
+    private void recordFrame(int gesture, long frameNanos) {
+        int bucket = (int) Math.min(frameNanos / NANOS_PER_MS, HISTOGRAM_BUCKETS - 1);
+        mHistograms[gesture][bucket]++;
+        mFrameCounts[gesture]++;
+        if (frameNanos > mJankThresholdNanos) {
+            mJankyFrameCounts[gesture]++;
+        }
+        if (frameNanos > mMaxFrameNanos[gesture]) {
+            mMaxFrameNanos[gesture] = frameNanos;
+        }
+        long[] phaseTotalNanos = mPhaseTotalNanos[gesture];
+        long[] phaseMaxNanos = mPhaseMaxNanos[gesture];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseTotalNanos[i] += mFramePhaseNanos[i];
+            if (mFramePhaseNanos[i] > phaseMaxNanos[i]) {
+                phaseMaxNanos[i] = mFramePhaseNanos[i];
+            }
+        }
+        if (mFrameCounts[gesture] >= mReportFrameCount) {
+            report(gesture);
+        }
+    }
+
+    private void startFrame() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mFramePhaseNanos[i] = 0;
+        }
+        mFrameHeaderCollapsed = false;
+    }
+
+    private void report(int gesture) {
+        int frameCount = mFrameCounts[gesture];
+        long[] phaseAverageNanos = new long[PHASE_COUNT];
+        long[] phaseMaxNanos = new long[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseAverageNanos[i] = mPhaseTotalNanos[gesture][i] / frameCount;
+            phaseMaxNanos[i] = mPhaseMaxNanos[gesture][i];
+        }
+        Snapshot snapshot = new Snapshot(gesture, frameCount, mJankyFrameCounts[gesture],
+                percentile(gesture, 50), percentile(gesture, 90), percentile(gesture, 99),
+                mMaxFrameNanos[gesture], phaseAverageNanos, phaseMaxNanos);
+
+        // 清空这种手势的统计
+        int[] histogram = mHistograms[gesture];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = 0;
+        }
+        mFrameCounts[gesture] = 0;
+        mJankyFrameCounts[gesture] = 0;
+        mMaxFrameNanos[gesture] = 0;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseTotalNanos[gesture][i] = 0;
+            mPhaseMaxNanos[gesture][i] = 0;
+        }
+
+        if (mSink != null) {
+            mSink.onSnapshot(snapshot);
+        }
+    }
+
+    // Choreographer 在 API 16 才有, 放在单独的类里, 低版本上不会加载
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameTicker implements Choreographer.FrameCallback {
+        boolean mRunning;
+
+        void start() {
+            if (!mRunning) {
+                mRunning = true;
+                post();
+            }
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            if (mRunning) {
+                mRunning = false;
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mRunning) {
+                onFrame(frameTimeNanos);
+            }
+        }
+    }
+
+    /**
+     * @return 分位数所在档的上限, 落在最后一档时返回最大帧耗时
+     */
+    private long percentile(int gesture, int percent) {
+        int[] histogram = mHistograms[gesture];
+        // 向上取整, 保证至少有 percent% 的帧不超过返回值
+        long target = ((long) mFrameCounts[gesture] * percent + 99) / 100;
+        long cumulative = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS - 1; i++) {
+            cumulative += histogram[i];
+            if (cumulative >= target) {
+                return (i + 1) * NANOS_PER_MS;
+            }
+        }
+        return mMaxFrameNanos[gesture];
+    }
+}
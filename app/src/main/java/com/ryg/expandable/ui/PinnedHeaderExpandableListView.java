@@ -26,21 +26,35 @@
 
 package com.ryg.expandable.ui;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.DataSetObserver;
 import android.graphics.Canvas;
-import android.graphics.Rect;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ExpandableListAdapter;
 import android.widget.ExpandableListView;
+import android.widget.HeterogeneousExpandableList;
+import android.widget.ListAdapter;
+import android.widget.WrapperListAdapter;
 import android.widget.AbsListView.OnScrollListener;
 
-public class PinnedHeaderExpandableListView extends ExpandableListView implements OnScrollListener {
-    private static final String TAG = "PinnedHeaderExpandable";
-    private static final boolean DEBUG = true;
+import com.ryg.expandable.core.GroupPositionIndex;
+import com.ryg.expandable.core.PinnedHeaderLayout;
+
+import java.util.BitSet;
+
+public class PinnedHeaderExpandableListView extends ExpandableListView implements OnScrollListener,
+        ExpandableListView.OnGroupExpandListener, ExpandableListView.OnGroupCollapseListener {
 
     public interface OnHeaderUpdateListener {
         /**
@@ -49,19 +63,114 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
          */
         public View getPinnedHeader();
 
+        /**
+         * 绑定头部要显示的 group
+         * <p>
+         * 只在固定的 group 变化、展开/折叠、数据变化或调用 {@link #requestRefreshHeader()} 时回调,
+         * 头部被顶上去的过程中不会回调. 建议像 ViewHolder 一样把子 View 缓存在 headerView 的 tag 里.
+         */
         public void updatePinnedHeader(View headerView, int firstVisibleGroupPos);
     }
 
+    public interface OnTypedHeaderUpdateListener extends OnHeaderUpdateListener {
+        /**
+         * 返回 groupType 类型的头部 View, groupType 取自 adapter 的 getGroupType.
+         * 每种类型的 View 创建后会被回收复用, 切换固定的 group 时不再重新创建和测量.
+         * 注意：view必须要有LayoutParams
+         */
+        public View getPinnedHeader(int groupType);
+    }
+
+    public interface OnHeaderOffsetChangeListener {
+        /**
+         * 头部被下一个 group 顶上去的距离变化时回调, 每次滚动最多回调一次, 不要在这里修改头部的内容
+         *
+         * @param offset 头部被顶上去的距离, 0 表示完整显示  单位：px
+         */
+        public void onPinnedHeaderOffsetChanged(View headerView, int pinnedGroupPos, int offset);
+    }
+
     private View mHeaderView;
     private int mHeaderWidth;
     private int mHeaderHeight;
 
+    // 所有 group、子元素的高度固定, 行高没有指定时等第一次布局后从行 View 上读取, 保存在 mHeaderLayout 里
+    private boolean mFixedItemHeights;
+
+    // 固定的头部被顶上去时, 下一个 group 的头部跟着一起绘制
+    private boolean mDrawIncomingHeader;
+    private boolean mIncomingHeaderVisible;
+    private View mIncomingHeaderView;
+    private int mIncomingHeaderType;
+    private int mIncomingGroupPosition = INVALID_POSITION;
+    private int mIncomingHeaderTop;
+
+    // 头部的绘制缓存, 只在内容变化后重新绘制
+    private boolean mHeaderDrawingCacheEnabled;
+    private HeaderDrawingCache mHeaderCache = new HeaderDrawingCache();
+    private HeaderDrawingCache mIncomingHeaderCache = new HeaderDrawingCache();
+
+    private TraceSink mTraceSink;
+
+    // 按 group 类型使用不同的头部时, 回收暂时不用的头部
+    private final PinnedHeaderPool mHeaderPool = new PinnedHeaderPool();
+    private int mHeaderType;
+    // 上一次测量头部用的 MeasureSpec, 新创建的头部直接按它测量
+    private int mHeaderWidthMeasureSpec;
+    private int mHeaderHeightMeasureSpec;
+    private boolean mHeaderMeasureSpecValid;
+
+    // 按下头部时确定的目标, 移动超过 mTouchSlop 或取消后置为 null
     private View mTouchTarget;
+    // 当前手势是否从头部开始, 是的话整个手势都由头部处理
+    private boolean mHeaderTouchInProgress;
+    private int mTouchDownX;
+    private int mTouchDownY;
+    private int mTouchSlop;
+    // 递归查找头部里的可点击 View, 区域表在头部绑定或布局后重建一次
+    private boolean mDeepHeaderHitTestEnabled;
+    private final HeaderTouchMap mHeaderTouchMap = new HeaderTouchMap();
 
     private OnScrollListener mScrollListener;
+    private int mScrollState = SCROLL_STATE_IDLE;
+    private OnGroupExpandListener mGroupExpandListener;
+    private OnGroupCollapseListener mGroupCollapseListener;
     private OnHeaderUpdateListener mHeaderUpdateListener;
+    private OnHeaderOffsetChangeListener mHeaderOffsetChangeListener;
+
+    // group 在扁平列表中的起始位置, 展开/折叠时单点更新, 数据变化后标记为 dirty, 下次用到时重建
+    private final GroupPositionIndex mGroupIndex = new GroupPositionIndex();
+    private final PinnedHeaderLayout mHeaderLayout = new PinnedHeaderLayout(mGroupIndex);
+    private boolean mGroupIndexDirty = true;
+    private int mGroupIndexHeaderCount;
+    // 展开状态的镜像, 数据变化后 ExpandableListView 会按 id 重新对应展开的 group, 需要重新同步
+    private final BitSet mExpandedGroups = new BitSet();
+    private boolean mExpandedGroupsDirty = true;
+    // 最近一次数据变化之前镜像是否和列表一致, 只在末尾增删 group 时用来保留镜像
+    private boolean mExpandedGroupsSyncedBeforeChange;
+    // 恢复状态时 adapter 还没有数据的话先保存下来, 有数据后再恢复
+    private SavedState mPendingState;
+    private ExpandableListAdapter mAdapter;
+    private ExpandableAdapterStructure mAdapterStructure;
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            mExpandedGroupsSyncedBeforeChange = !mExpandedGroupsDirty;
+            mExpandedGroupsDirty = true;
+            // ExpandableListView 的观察者在这之前已经处理完了数据变化
+            applyPendingState(null);
+        }
+
+        @Override
+        public void onInvalidated() {
+            mExpandedGroupsDirty = true;
+        }
+    };
+
+    // 当前固定在头部的 group, 以及头部被下一个 group 顶上去的距离
+    private int mPinnedGroupPosition = INVALID_POSITION;
+    private int mPinnedHeaderOffset;
 
-    private boolean mActionDownHappened = false;
     protected boolean mIsHeaderGroupClickable = true;
 
 
@@ -81,8 +190,20 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
     }
 
     private void initView() {
+        mTouchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
         setFadingEdgeLength(0);
         setOnScrollListener(this);
+        setOnGroupExpandListener(this);
+        setOnGroupCollapseListener(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            enableNestedScrolling();
+        }
+    }
+
+    // 把滚动位移通过嵌套滑动协议交给父布局(比如 StickyLayout)
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void enableNestedScrolling() {
+        setNestedScrollingEnabled(true);
     }
 
     // 这是 AbsListView 里面的方法
@@ -96,6 +217,116 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
         super.setOnScrollListener(this);
     }
 
+    @Override
+    public void setOnGroupExpandListener(OnGroupExpandListener onGroupExpandListener) {
+        mGroupExpandListener = onGroupExpandListener != this ? onGroupExpandListener : null;
+        super.setOnGroupExpandListener(this);
+    }
+
+    @Override
+    public void setOnGroupCollapseListener(OnGroupCollapseListener onGroupCollapseListener) {
+        mGroupCollapseListener = onGroupCollapseListener != this ? onGroupCollapseListener : null;
+        super.setOnGroupCollapseListener(this);
+    }
+
+    @Override
+    public void setAdapter(ExpandableListAdapter adapter) {
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mDataSetObserver);
+        }
+        mAdapter = adapter;
+        mAdapterStructure = adapter != null ? new ExpandableAdapterStructure(adapter) : null;
+        if (adapter != null) {
+            adapter.registerDataSetObserver(mDataSetObserver);
+        }
+        mExpandedGroupsDirty = true;
+        super.setAdapter(adapter);
+        applyPendingState(null);
+    }
+
+    /**
+     * adapter 的 hasStableIds() 返回 true 时, 按 group id 保存展开状态和第一个可见的元素
+     * <p>
+     * ExpandableListView 自己按位置保存的展开列表换成空的, 展开状态只保存一份.
+     */
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        if (mAdapter == null || !mAdapter.hasStableIds()) {
+            return superState;
+        }
+        ensureGroupIndex();
+        Parcelable frameworkState = ExpandableListSavedState.create(superState, mAdapter, new BitSet());
+        SavedState ss = new SavedState(frameworkState != null ? frameworkState : superState);
+        ss.expansionState = ExpansionState.capture(mAdapter, mExpandedGroups);
+        long packedPosition = getExpandableListPosition(getFirstVisiblePosition());
+        View firstChild = getChildAt(0);
+        if (packedPosition != PACKED_POSITION_VALUE_NULL && firstChild != null) {
+            int groupPos = getPackedPositionGroup(packedPosition);
+            ss.anchorGroupId = mAdapter.getGroupId(groupPos);
+            ss.anchorChildPosition = getPackedPositionType(packedPosition) == PACKED_POSITION_TYPE_CHILD
+                    ? getPackedPositionChild(packedPosition) : -1;
+            ss.anchorTop = firstChild.getTop() - getPaddingTop();
+            ss.hasAnchor = true;
+        }
+        return ss;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            // 恢复展开状态时不会回调 OnGroupExpandListener
+            mExpandedGroupsDirty = true;
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        mPendingState = ss;
+        if (!applyPendingState(ss.getSuperState())) {
+            // adapter 还没有数据, 先恢复 ExpandableListView 自己的状态, 展开状态等有数据后再恢复
+            super.onRestoreInstanceState(ss.getSuperState());
+            mExpandedGroupsDirty = true;
+        }
+    }
+
+    /**
+     * 遍历一次 group, 按 id 找出需要展开的 group 和第一个可见的 group, 然后一次设置展开状态和滚动位置
+     *
+     * @param frameworkState 和展开状态一起恢复的 ExpandableListView 自己的状态, 可以为 null
+     * @return adapter 还没有数据、没有恢复时返回 false
+     */
+    private boolean applyPendingState(Parcelable frameworkState) {
+        SavedState ss = mPendingState;
+        if (ss == null || mAdapter == null || mAdapter.getGroupCount() == 0) {
+            return false;
+        }
+        mPendingState = null;
+        ExpansionState expansionState = ss.expansionState;
+        BitSet expandedGroups = new BitSet();
+        int anchorGroupPos = INVALID_POSITION;
+        for (int i = 0, count = mAdapter.getGroupCount(); i < count; i++) {
+            long groupId = mAdapter.getGroupId(i);
+            if (expansionState.isGroupExpanded(groupId)) {
+                expandedGroups.set(i);
+            }
+            if (ss.hasAnchor && anchorGroupPos == INVALID_POSITION && groupId == ss.anchorGroupId) {
+                anchorGroupPos = i;
+            }
+        }
+        // 展开的 group 和 ExpandableListView 自己的状态一起交给它, 不逐个展开
+        applyExpandedGroups(frameworkState, expandedGroups);
+        if (anchorGroupPos != INVALID_POSITION) {
+            ensureGroupIndex();
+            int flatPos = mGroupIndex.getFlatPosition(anchorGroupPos);
+            if (ss.anchorChildPosition >= 0 && expandedGroups.get(anchorGroupPos)
+                    && ss.anchorChildPosition < mAdapter.getChildrenCount(anchorGroupPos)) {
+                flatPos += 1 + ss.anchorChildPosition;
+            }
+            setSelectionFromTop(flatPos, ss.anchorTop);
+        }
+        return true;
+    }
+
     /**
      * 给group添加点击事件监听
      *
@@ -116,57 +347,312 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
      */
     public void setOnHeaderUpdateListener(OnHeaderUpdateListener listener) {
         mHeaderUpdateListener = listener;
+        mHeaderPool.clear();
         if (listener == null) {
             mHeaderView = null;
             mHeaderWidth = mHeaderHeight = 0;
             return;
         }
-        // 获取头部固定的 View.
-        mHeaderView = listener.getPinnedHeader();
-        int firstVisiblePos = getFirstVisiblePosition();
-        long expandableListPos = getExpandableListPosition(firstVisiblePos);
-        // 获取第一个可见的组的索引号
-        int firstVisibleGroupPos = getPackedPositionGroup(expandableListPos);
-        listener.updatePinnedHeader(mHeaderView, firstVisibleGroupPos);
+        if (listener instanceof OnTypedHeaderUpdateListener) {
+            // 头部在第一次绑定时按 group 的类型创建
+            mHeaderView = null;
+        } else {
+            // 获取头部固定的 View.
+            mHeaderView = listener.getPinnedHeader();
+        }
+        mHeaderType = 0;
+        mIncomingHeaderView = null;
+        mIncomingGroupPosition = INVALID_POSITION;
+        mIncomingHeaderVisible = false;
+        mPinnedGroupPosition = INVALID_POSITION;
+        mPinnedHeaderOffset = 0;
+        refreshHeader();
         requestLayout();
         postInvalidate();
     }
 
+    /**
+     * 头部被下一个 group 顶上去时, 是否把下一个 group 的头部同时画出来
+     * <p>
+     * 打开后会多用一个头部 View: 没有实现 {@link OnTypedHeaderUpdateListener} 时,
+     * {@link OnHeaderUpdateListener#getPinnedHeader()} 会被多调用一次.
+     * 顶上去的过程中两个头部都只做平移, 进来的头部在接替固定位置时不需要重新绑定.
+     */
+    public void setDrawIncomingHeader(boolean drawIncomingHeader) {
+        mDrawIncomingHeader = drawIncomingHeader;
+        if (!drawIncomingHeader) {
+            mIncomingHeaderVisible = false;
+        }
+        invalidate();
+    }
+
+    /**
+     * 是否使用头部的绘制缓存
+     * <p>
+     * 打开后头部只在重新绑定、按下状态或尺寸变化时重新绘制, 滚动时只是平移绘制缓存.
+     * 如果在 {@link OnHeaderUpdateListener#updatePinnedHeader} 之外修改了头部的内容
+     * (包括头部里的动画), 需要调用 {@link #invalidateHeaderDrawingCache()}.
+     */
+    public void setHeaderDrawingCacheEnabled(boolean enabled) {
+        if (mHeaderDrawingCacheEnabled == enabled) {
+            return;
+        }
+        mHeaderDrawingCacheEnabled = enabled;
+        if (!enabled) {
+            mHeaderCache.release();
+            mIncomingHeaderCache.release();
+        }
+        invalidate();
+    }
+
+    /**
+     * 头部的内容在绑定之外发生了变化, 让绘制缓存在下一帧重新绘制
+     */
+    public void invalidateHeaderDrawingCache() {
+        mHeaderCache.invalidate();
+        mIncomingHeaderCache.invalidate();
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mHeaderCache.release();
+        mIncomingHeaderCache.release();
+    }
+
+    /**
+     * 是否递归查找头部里被点击的 View
+     * <p>
+     * 默认只查找头部的直接子 View. 打开后会在头部绑定或布局后建立一张可点击区域表,
+     * 嵌套在深层的可点击 View 也能收到点击, 查找的耗时和头部的复杂程度无关.
+     */
+    public void setDeepHeaderHitTestEnabled(boolean enabled) {
+        mDeepHeaderHitTestEnabled = enabled;
+        mHeaderTouchMap.invalidate();
+    }
+
+    /**
+     * 设置打点的接收者, 为 null 时关闭打点
+     * <p>
+     * 会统计头部的刷新、绑定和重新布局, 例如传入 {@link TraceCounters} 定期读取并上报.
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        mTraceSink = traceSink;
+    }
+
+    public TraceSink getTraceSink() {
+        return mTraceSink;
+    }
+
+    /**
+     * 设置头部被顶上去的距离变化的监听
+     */
+    public void setOnHeaderOffsetChangeListener(OnHeaderOffsetChangeListener listener) {
+        mHeaderOffsetChangeListener = listener;
+    }
+
+    /**
+     * 所有 group 的高度相同、所有子元素的高度也相同时打开
+     * <p>
+     * 打开后头部只在尺寸或内容变化时重新测量; 列表高度是 wrap_content 时按行数直接算出高度,
+     * 不再逐行测量; 头部被顶上去的距离也按行高计算.
+     *
+     * @param groupHeight group 的高度, 小于等于 0 时取第一次布局出来的 group 的高度
+     * @param childHeight 子元素的高度, 小于等于 0 时取第一次布局出来的子元素的高度
+     */
+    public void setFixedItemHeights(int groupHeight, int childHeight) {
+        mFixedItemHeights = true;
+        mHeaderLayout.setFixedItemHeights(groupHeight, childHeight);
+        requestLayout();
+    }
+
+    /**
+     * 关闭固定行高, 恢复逐行测量
+     */
+    public void clearFixedItemHeights() {
+        mFixedItemHeights = false;
+        mHeaderLayout.setFixedItemHeights(0, 0);
+        requestLayout();
+    }
+
+    /**
+     * @return 列表当前的滚动状态, OnScrollListener.SCROLL_STATE_* 之一
+     */
+    public int getScrollState() {
+        return mScrollState;
+    }
+
+    /**
+     * 拖动快速滚动条时, 同一个 section 里的每次移动都会跳到这个 group 的顶部.
+     * 已经停在那里的话不再重新布局, 头部只在拖到新的 section 时刷新一次.
+     */
+    @Override
+    public void setSelectionFromTop(int position, int y) {
+        if (isFastScrollEnabled() && mScrollState == SCROLL_STATE_TOUCH_SCROLL && !isLayoutRequested()
+                && position == getFirstVisiblePosition()) {
+            View firstView = getChildAt(0);
+            if (firstView != null && firstView.getTop() == getListPaddingTop() + y) {
+                return;
+            }
+        }
+        super.setSelectionFromTop(position, y);
+    }
+
+    /**
+     * @return 当前固定在头部的 group 的索引号, 没有时返回 {@link #INVALID_POSITION}
+     */
+    public int getPinnedGroupPosition() {
+        return mPinnedGroupPosition;
+    }
+
     // 测量
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_MEASURE, 0);
+        }
+        int fixedHeight = computeFixedContentHeight(heightMeasureSpec);
+        if (fixedHeight >= 0) {
+            // 行高固定时直接算出列表的高度, ListView 不用逐行测量
+            super.onMeasure(widthMeasureSpec, MeasureSpec.makeMeasureSpec(fixedHeight, MeasureSpec.EXACTLY));
+        } else {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
         // 头部 View 不存在, 不去测量
         if (mHeaderView == null) {
             return;
         }
-        // 测量头部 View 的宽和高
-        measureChild(mHeaderView, widthMeasureSpec, heightMeasureSpec); // 测量 headerView 的宽高
+        boolean specChanged = !mHeaderMeasureSpecValid || mHeaderWidthMeasureSpec != widthMeasureSpec
+                || mHeaderHeightMeasureSpec != heightMeasureSpec;
+        mHeaderWidthMeasureSpec = widthMeasureSpec;
+        mHeaderHeightMeasureSpec = heightMeasureSpec;
+        mHeaderMeasureSpecValid = true;
+        // 测量头部 View 的宽和高, 行高固定时只在尺寸或内容变化时测量
+        if (!mFixedItemHeights || specChanged || mHeaderView.isLayoutRequested()) {
+            measureChild(mHeaderView, widthMeasureSpec, heightMeasureSpec); // 测量 headerView 的宽高
+        }
+        if (specChanged) {
+            // 尺寸变了, 回收的头部也要重新测量
+            if (mIncomingHeaderView != null) {
+                measureChild(mIncomingHeaderView, widthMeasureSpec, heightMeasureSpec);
+            }
+            for (int type = 0; type < mHeaderPool.getTypeCount(); type++) {
+                for (int i = 0; i < mHeaderPool.getScrapCount(type); i++) {
+                    measureChild(mHeaderPool.getScrapView(type, i), widthMeasureSpec, heightMeasureSpec);
+                }
+            }
+        }
         mHeaderWidth = mHeaderView.getMeasuredWidth();
         mHeaderHeight = mHeaderView.getMeasuredHeight();
-        Log.d(TAG, "mHeaderWidth=" + mHeaderWidth + ", mHeaderHeight=" + mHeaderHeight);
+    }
+
+    /**
+     * 行高固定、列表高度是 wrap_content 时按行数算出列表的高度
+     *
+     * @return 列表的高度, 不能直接计算时返回 -1
+     */
+    private int computeFixedContentHeight(int heightMeasureSpec) {
+        if (!mFixedItemHeights || !mHeaderLayout.hasFixedItemHeights()
+                || MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.AT_MOST
+                || getHeaderViewsCount() > 0 || getFooterViewsCount() > 0 || mAdapter == null) {
+            return -1;
+        }
+        ensureGroupIndex();
+        // 用 long 计算, 行数很多时不会溢出
+        long height = getPaddingTop() + getPaddingBottom() + mHeaderLayout.computeContentHeight(getDividerHeight());
+        return (int) Math.min(height, MeasureSpec.getSize(heightMeasureSpec));
+    }
+
+    /**
+     * 没有指定行高时, 从第一次布局出来的行 View 上读取
+     */
+    private void learnFixedItemHeights() {
+        if (!mFixedItemHeights || mHeaderLayout.hasFixedItemHeights() || mAdapter == null) {
+            return;
+        }
+        ensureGroupIndex();
+        int groupHeight = mHeaderLayout.getFixedGroupHeight();
+        int childHeight = mHeaderLayout.getFixedChildHeight();
+        int firstVisiblePos = getFirstVisiblePosition();
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            int flatPos = firstVisiblePos + i;
+            int groupPos = mGroupIndex.getGroupForFlatPosition(flatPos);
+            if (groupPos == INVALID_POSITION) {
+                continue;
+            }
+            int height = getChildAt(i).getHeight();
+            if (flatPos == mGroupIndex.getFlatPosition(groupPos)) {
+                if (groupHeight <= 0) {
+                    groupHeight = height;
+                }
+            } else if (childHeight <= 0) {
+                childHeight = height;
+            }
+        }
+        mHeaderLayout.setFixedItemHeights(groupHeight, childHeight);
     }
 
     // 布局
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         super.onLayout(changed, l, t, r, b);
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_LAYOUT, 0);
+        }
+        learnFixedItemHeights();
         // 头部 View 不存在, 不去布局
         if (mHeaderView == null) {
             return;
         }
-        int delta = mHeaderView.getTop();
-        Log.d(TAG, "mHeaderView delta=" + delta);
-        mHeaderView.layout(0, delta, mHeaderWidth, mHeaderHeight + delta); // 确定 headerView 的位置
+        // 头部始终布局在 (0, 0), 被顶上去的距离在绘制时平移
+        mHeaderView.layout(0, 0, mHeaderWidth, mHeaderHeight); // 确定 headerView 的位置
+        mHeaderTouchMap.invalidate();
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_LAYOUT_HEADER, 0);
+        }
+        if (mIncomingHeaderView != null) {
+            mIncomingHeaderView.layout(0, 0, mIncomingHeaderView.getMeasuredWidth(),
+                    mIncomingHeaderView.getMeasuredHeight());
+        }
     }
 
     // 用来绘制 Children 的方法
     // 是在 View 的 draw() 方法里面调用的
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        TraceSink traceSink = mTraceSink;
+        if (traceSink == null) {
+            dispatchDrawInternal(canvas);
+            return;
+        }
+        long start = System.nanoTime();
+        dispatchDrawInternal(canvas);
+        traceSink.onTraceEvent(TraceSink.EVENT_DRAW, System.nanoTime() - start);
+    }
+
+    private void dispatchDrawInternal(Canvas canvas) {
         super.dispatchDraw(canvas);
         if (mHeaderView != null) {
-            drawChild(canvas, mHeaderView, getDrawingTime()); // 绘制 headerView 到屏幕上
+            long drawingTime = getDrawingTime();
+            if (mIncomingHeaderVisible && mIncomingHeaderView != null) {
+                int saveCount = canvas.save();
+                canvas.translate(0, mIncomingHeaderTop);
+                if (mHeaderDrawingCacheEnabled) {
+                    mIncomingHeaderCache.draw(canvas, mIncomingHeaderView);
+                } else {
+                    drawChild(canvas, mIncomingHeaderView, drawingTime);
+                }
+                canvas.restoreToCount(saveCount);
+            }
+            int saveCount = canvas.save();
+            canvas.translate(0, -mPinnedHeaderOffset);
+            if (mHeaderDrawingCacheEnabled) {
+                mHeaderCache.draw(canvas, mHeaderView);
+            } else {
+                drawChild(canvas, mHeaderView, drawingTime); // 绘制 headerView 到屏幕上
+            }
+            canvas.restoreToCount(saveCount);
         }
     }
 
@@ -174,30 +660,50 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
     // 处理头部固定的 View 的点击事件
     @Override
     public boolean dispatchTouchEvent(MotionEvent ev) {
-        int x = (int) ev.getX();
-        int y = (int) ev.getY();
-        // 把一个触摸点转为 ListView 中包含这个点的那个条目的 position
-        int pos = pointToPosition(x, y);
-        if (mHeaderView != null) {
-            Log.d(TAG, "dispatchTouchEvent x=" + x + ", y=" + y + ", pos=" + pos + ", mHeaderView.getTop()=" + mHeaderView.getTop()
-                    + ", mHeaderView.getBottom()=" + mHeaderView.getBottom());
-        }
-        // 判断点击事件位于 mHeaderView 上面
-        if (mHeaderView != null && y >= mHeaderView.getTop() && y <= mHeaderView.getBottom()) {
-            if (ev.getAction() == MotionEvent.ACTION_DOWN) {
+        int action = ev.getAction() & MotionEvent.ACTION_MASK;
+        if (action == MotionEvent.ACTION_DOWN) {
+            mHeaderTouchInProgress = false;
+            int x = (int) ev.getX();
+            int y = (int) ev.getY();
+            // 判断点击事件位于 mHeaderView 上面, 头部被顶上去时在绘制时平移了 mPinnedHeaderOffset
+            if (mHeaderView != null && mPinnedGroupPosition != INVALID_POSITION
+                    && PinnedHeaderLayout.isInHeader(x, y, mHeaderWidth, mHeaderHeight, mPinnedHeaderOffset)) {
+                mHeaderTouchInProgress = true;
+                mTouchDownX = x;
+                mTouchDownY = y;
                 // 再具体定位是触摸了头部布局里面的哪个 View, 找不到的话, 就返回头部布局本身了.
-                mTouchTarget = getTouchTarget(mHeaderView, x, y);
-                mTouchTarget.setPressed(true);
-                mActionDownHappened = true;
-            } else if (ev.getAction() == MotionEvent.ACTION_UP) {
-                View touchTarget = getTouchTarget(mHeaderView, x, y);
-                if (touchTarget == mTouchTarget && mTouchTarget.isClickable()) {
-                    mTouchTarget.performClick();
-                    invalidate(new Rect(0, 0, mHeaderWidth, mHeaderHeight));
+                // 头部绘制时向上平移了 mPinnedHeaderOffset, 换算成头部里的坐标
+                mTouchTarget = getTouchTarget(mHeaderView, x, y + mPinnedHeaderOffset);
+                setTouchTargetPressed(true);
+                return true;
+            }
+            return super.dispatchTouchEvent(ev);
+        }
+        if (!mHeaderTouchInProgress) {
+            return super.dispatchTouchEvent(ev);
+        }
+
+        switch (action) {
+        case MotionEvent.ACTION_MOVE: {
+            // 移动超过 touch slop 就不再算点击
+            if (mTouchTarget != null && (Math.abs((int) ev.getX() - mTouchDownX) > mTouchSlop
+                    || Math.abs((int) ev.getY() - mTouchDownY) > mTouchSlop)) {
+                setTouchTargetPressed(false);
+                mTouchTarget = null;
+            }
+            break;
+        }
+        case MotionEvent.ACTION_UP: {
+            if (mTouchTarget != null) {
+                View touchTarget = mTouchTarget;
+                setTouchTargetPressed(false);
+                mTouchTarget = null;
+                if (touchTarget.isClickable()) {
+                    touchTarget.performClick();
                 } else if (mIsHeaderGroupClickable) {
-                    // flat list position -> packed position -> group position(组的索引号)
-                    int groupPosition = getPackedPositionGroup(getExpandableListPosition(pos));
-                    if (groupPosition != INVALID_POSITION && mActionDownHappened) {
+                    // 确认点击之后才去找头部对应的 group
+                    int groupPosition = mPinnedGroupPosition;
+                    if (groupPosition != INVALID_POSITION) {
                         if (isGroupExpanded(groupPosition)) {
                             collapseGroup(groupPosition);
                         } else {
@@ -205,16 +711,41 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
                         }
                     }
                 }
-                mTouchTarget.setPressed(false);
-                mActionDownHappened = false;
             }
-            return true;
+            mHeaderTouchInProgress = false;
+            break;
         }
+        case MotionEvent.ACTION_CANCEL: {
+            setTouchTargetPressed(false);
+            mTouchTarget = null;
+            mHeaderTouchInProgress = false;
+            break;
+        }
+        default:
+            break;
+        }
+        return true;
+    }
 
-        return super.dispatchTouchEvent(ev);
+    private void setTouchTargetPressed(boolean pressed) {
+        if (mTouchTarget == null) {
+            return;
+        }
+        mTouchTarget.setPressed(pressed);
+        mHeaderCache.invalidate();
+        invalidateHeader();
+    }
+
+    // 只重绘头部所在的区域
+    private void invalidateHeader() {
+        int headerTop = -mPinnedHeaderOffset;
+        invalidate(0, headerTop, mHeaderWidth, headerTop + mHeaderHeight);
     }
 
     private View getTouchTarget(View view, int x, int y) {
+        if (mDeepHeaderHitTestEnabled) {
+            return mHeaderTouchMap.findTarget(view, x, y);
+        }
         if (!(view instanceof ViewGroup)) {
             return view;
         }
@@ -255,9 +786,277 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
         return false;
     }
 
+    /**
+     * adapter 只在末尾追加或删除了 group, 前面的 group 和子元素都没有变化时, 在 notifyDataSetChanged 之后调用
+     * <p>
+     * 前面的 group 的展开状态不用再逐个向 ExpandableListView 查询, 位置索引马上重建;
+     * 固定的 group 没有被删除时头部不重新绑定, 它的内容变了的话再调用 {@link #requestRefreshHeader()}.
+     *
+     * @param oldGroupCount 变化之前的 group 个数
+     */
+    public void onGroupsChangedAtEnd(int oldGroupCount) {
+        if (mAdapter == null || !mExpandedGroupsDirty || !mExpandedGroupsSyncedBeforeChange) {
+            return;
+        }
+        int groupCount = mAdapter.getGroupCount();
+        // ExpandableListView 按 id 保留前面的 group 的展开状态, 新追加的 group 是折叠的
+        if (groupCount < oldGroupCount) {
+            mExpandedGroups.clear(groupCount, oldGroupCount);
+        }
+        mExpandedGroupsDirty = false;
+        mGroupIndexDirty = true;
+        ensureGroupIndex();
+        if (mPinnedGroupPosition >= groupCount) {
+            mPinnedGroupPosition = INVALID_POSITION;
+        }
+        if (mIncomingGroupPosition >= groupCount) {
+            mIncomingGroupPosition = INVALID_POSITION;
+        }
+    }
+
+    /**
+     * 重新绑定并刷新头部, 在头部需要显示的内容变化时调用
+     */
     public void requestRefreshHeader() {
+        mPinnedGroupPosition = INVALID_POSITION;
+        mIncomingGroupPosition = INVALID_POSITION;
         refreshHeader();
-        invalidate(new Rect(0, 0, mHeaderWidth, mHeaderHeight));
+        invalidateHeader();
+    }
+
+    /**
+     * 展开全部 group
+     */
+    public void expandAll() {
+        if (mAdapter == null) {
+            return;
+        }
+        BitSet expandedGroups = new BitSet();
+        expandedGroups.set(0, mAdapter.getGroupCount());
+        setExpandedGroups(expandedGroups);
+    }
+
+    /**
+     * 折叠全部 group
+     */
+    public void collapseAll() {
+        setExpandedGroups(new BitSet());
+    }
+
+    /**
+     * 展开多个 group, 已经展开的 group 保持不变
+     */
+    public void expandGroups(int[] groupPositions) {
+        if (mAdapter == null) {
+            return;
+        }
+        ensureGroupIndex();
+        BitSet expandedGroups = (BitSet) mExpandedGroups.clone();
+        for (int groupPosition : groupPositions) {
+            expandedGroups.set(groupPosition);
+        }
+        setExpandedGroups(expandedGroups);
+    }
+
+    /**
+     * 一次设置所有 group 的展开状态
+     * <p>
+     * 展开的 group 列表按 ExpandableListView 恢复状态的方式一次交给它, 列表只刷新一遍、通知一次,
+     * 位置索引的重建和头部的刷新也只在接下来的布局里做一次. 不会回调 OnGroupExpandListener
+     * 和 OnGroupCollapseListener. 系统版本不支持这种方式时退回逐个调用 expandGroup/collapseGroup,
+     * 这时每个 group 都要付出 ExpandableListView 的一次 O(n) 刷新.
+     *
+     * @param expandedGroups 需要展开的 group, 超出 group 个数的位忽略
+     */
+    public void setExpandedGroups(BitSet expandedGroups) {
+        if (mAdapter == null) {
+            return;
+        }
+        BitSet groups = expandedGroups.get(0, mAdapter.getGroupCount());
+        if (!mExpandedGroupsDirty && groups.equals(mExpandedGroups)) {
+            return;
+        }
+        applyExpandedGroups(null, groups);
+    }
+
+    /**
+     * @param frameworkState 同时恢复的 ExpandableListView 自己的状态, 为 null 时保持列表当前的状态
+     * @param expandedGroups 需要展开的 group, 不能超出 group 的个数
+     */
+    private void applyExpandedGroups(Parcelable frameworkState, BitSet expandedGroups) {
+        if (!restoreExpandedGroups(frameworkState, expandedGroups)) {
+            if (frameworkState != null) {
+                super.onRestoreInstanceState(frameworkState);
+                mExpandedGroupsDirty = true;
+            }
+            expandGroupsOneByOne(expandedGroups);
+        }
+        // 头部在接下来的布局里刷新一次
+        mPinnedGroupPosition = INVALID_POSITION;
+        mIncomingGroupPosition = INVALID_POSITION;
+        requestLayout();
+    }
+
+    /**
+     * 把展开的 group 写进 ExpandableListView 自己的 SavedState 再恢复, 然后通知列表一次
+     *
+     * @return 系统版本不支持时返回 false, 这时什么也没有改变
+     */
+    private boolean restoreExpandedGroups(Parcelable frameworkState, BitSet expandedGroups) {
+        BaseAdapter listAdapter = getListAdapter();
+        if (listAdapter == null || !canRestoreListState()) {
+            return false;
+        }
+        if (frameworkState == null) {
+            frameworkState = super.onSaveInstanceState();
+        }
+        Parcelable state = ExpandableListSavedState.create(frameworkState, mAdapter, expandedGroups);
+        if (state == null) {
+            return false;
+        }
+        super.onRestoreInstanceState(state);
+        mExpandedGroups.clear();
+        mExpandedGroups.or(expandedGroups);
+        mExpandedGroupsDirty = false;
+        mGroupIndexDirty = true;
+        // 恢复状态不会通知列表, 行数变了要让 ListView 重新读取
+        listAdapter.notifyDataSetChanged();
+        return true;
+    }
+
+    /**
+     * 只对状态变化的 group 调用 expandGroup/collapseGroup
+     */
+    private void expandGroupsOneByOne(BitSet expandedGroups) {
+        ensureGroupIndex();
+        // 标记为 dirty 后 onGroupExpand/onGroupCollapse 不再逐个更新索引
+        mGroupIndexDirty = true;
+        // ExpandableListView 按 group 顺序保存展开的 group, 从后往前折叠、从前往后展开时
+        // 每次都只在它的列表末尾删除或追加, 不用移动其余的元素
+        for (int i = mAdapter.getGroupCount() - 1; i >= 0; i--) {
+            if (mExpandedGroups.get(i) && !expandedGroups.get(i)) {
+                collapseGroup(i);
+            }
+        }
+        for (int i = expandedGroups.nextSetBit(0); i >= 0; i = expandedGroups.nextSetBit(i + 1)) {
+            if (!mExpandedGroups.get(i)) {
+                expandGroup(i);
+            }
+        }
+        ensureGroupIndex();
+    }
+
+    /**
+     * ExpandableListView 包装 adapter 用的 ExpandableListConnector, 有头部或尾部时外面还有一层
+     */
+    private BaseAdapter getListAdapter() {
+        ListAdapter adapter = getAdapter();
+        if (adapter instanceof WrapperListAdapter) {
+            adapter = ((WrapperListAdapter) adapter).getWrappedAdapter();
+        }
+        return adapter instanceof BaseAdapter ? (BaseAdapter) adapter : null;
+    }
+
+    /**
+     * 恢复 ListView 自己的状态时会重新设置过滤文字、重新进入多选模式, 这两种情况下不能走恢复状态的方式
+     */
+    private boolean canRestoreListState() {
+        if (isTextFilterEnabled() && !TextUtils.isEmpty(getTextFilter())) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || !isModalChoiceMode();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private boolean isModalChoiceMode() {
+        return getChoiceMode() == CHOICE_MODE_MULTIPLE_MODAL;
+    }
+
+    /**
+     * 用 O(log n) 的位置索引代替 ExpandableListView 按展开的 group 逐个查找
+     * <p>
+     * 只加快了查找: 单独调用 expandGroup/collapseGroup 时 ExpandableListView 仍然要做一次 O(n) 的刷新,
+     * 一次改变多个 group 用 {@link #setExpandedGroups(BitSet)}.
+     */
+    @Override
+    public long getExpandableListPosition(int flatListPosition) {
+        ensureGroupIndex();
+        int groupPos = mGroupIndex.getGroupForFlatPosition(flatListPosition);
+        if (groupPos == INVALID_POSITION) {
+            return PACKED_POSITION_VALUE_NULL;
+        }
+        int childPos = mGroupIndex.getChildPosition(flatListPosition, groupPos);
+        return childPos < 0 ? getPackedPositionForGroup(groupPos)
+                : getPackedPositionForChild(groupPos, childPos);
+    }
+
+    @Override
+    public int getFlatListPosition(long packedPosition) {
+        ensureGroupIndex();
+        int groupPos = getPackedPositionGroup(packedPosition);
+        int type = getPackedPositionType(packedPosition);
+        if (groupPos < 0 || groupPos >= mGroupIndex.getGroupCount()) {
+            // 无效的位置交给 ExpandableListView 处理, 行为和原来一致
+            return super.getFlatListPosition(packedPosition);
+        }
+        if (type == PACKED_POSITION_TYPE_GROUP) {
+            return mGroupIndex.getFlatPosition(groupPos);
+        }
+        int childPos = getPackedPositionChild(packedPosition);
+        if (type == PACKED_POSITION_TYPE_CHILD && mExpandedGroups.get(groupPos)
+                && childPos >= 0 && childPos < mAdapter.getChildrenCount(groupPos)) {
+            return mGroupIndex.getFlatPosition(groupPos) + 1 + childPos;
+        }
+        return super.getFlatListPosition(packedPosition);
+    }
+
+    /**
+     * 需要时同步展开状态并重建位置索引
+     *
+     * @return 是否重建了索引
+     */
+    private boolean ensureGroupIndex() {
+        if (mExpandedGroupsDirty) {
+            // isGroupExpanded 要在展开的 group 里逐个查找, 只在数据变化后做一次
+            mExpandedGroups.clear();
+            if (mAdapter != null) {
+                for (int i = 0, count = mAdapter.getGroupCount(); i < count; i++) {
+                    if (isGroupExpanded(i)) {
+                        mExpandedGroups.set(i);
+                    }
+                }
+            }
+            mExpandedGroupsDirty = false;
+            mGroupIndexDirty = true;
+        }
+        int headerCount = getHeaderViewsCount();
+        if (!mGroupIndexDirty && headerCount == mGroupIndexHeaderCount) {
+            return false;
+        }
+        mGroupIndex.rebuild(mAdapterStructure, mExpandedGroups, headerCount);
+        mGroupIndexHeaderCount = headerCount;
+        mGroupIndexDirty = false;
+        return true;
+    }
+
+    /**
+     * 一个 group 展开或折叠后更新镜像和索引, 索引是 dirty 的话留到重建时处理
+     */
+    private void onGroupExpandedChanged(int groupPosition, boolean expanded) {
+        if (mExpandedGroups.get(groupPosition) == expanded) {
+            return;
+        }
+        if (expanded) {
+            mExpandedGroups.set(groupPosition);
+        } else {
+            mExpandedGroups.clear(groupPosition);
+        }
+        if (!mGroupIndexDirty && !mExpandedGroupsDirty && groupPosition < mGroupIndex.getGroupCount()) {
+            mGroupIndex.setGroupExpanded(groupPosition, expanded, mAdapter.getChildrenCount(groupPosition));
+        }
+        // 展开/折叠后头部的内容可能已经变了, 重新绑定一次
+        mPinnedGroupPosition = INVALID_POSITION;
+        mIncomingGroupPosition = INVALID_POSITION;
     }
 
     /**
@@ -266,40 +1065,210 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
      * 调整头部布局的位置
      */
     protected void refreshHeader() {
-        if (mHeaderView == null) {
+        TraceSink traceSink = mTraceSink;
+        if (traceSink == null) {
+            refreshHeaderInternal();
             return;
         }
+        long start = System.nanoTime();
+        refreshHeaderInternal();
+        traceSink.onTraceEvent(TraceSink.EVENT_REFRESH_HEADER, System.nanoTime() - start);
+    }
+
+    private void refreshHeaderInternal() {
+        if (mHeaderUpdateListener == null) {
+            return;
+        }
+        if (ensureGroupIndex()) {
+            // 数据变化后头部的内容可能已经变了, 重新绑定一次
+            mPinnedGroupPosition = INVALID_POSITION;
+            mIncomingGroupPosition = INVALID_POSITION;
+        }
         int firstVisiblePos = getFirstVisiblePosition(); // 第一个可见元素的索引
-        int pos = firstVisiblePos + 1; // 第一个可见元素的索引加 1 的位置
-        // 先把 flat list position -> packed position, 再从 packed position 得到 group position
-        int firstVisibleGroupPos = getPackedPositionGroup(getExpandableListPosition(firstVisiblePos)); // 第一个可见的 Group 在所有 Group 中的索引
-        int group = getPackedPositionGroup(getExpandableListPosition(pos)); // 获取 pos 位置上的 Group 在所有 Group 中的索引
-        if (DEBUG) {
-            Log.d(TAG, "refreshHeader firstVisibleGroupPos=" + firstVisibleGroupPos);
-        }
-
-        if (group == firstVisibleGroupPos + 1) { // 是两个相邻的 Group
-            View view = getChildAt(1); // 所获取的都是屏幕上可见的child, 而不是全部的 child. 这里的 getChildAt(1) 是一个 group 的 View
-            Log.d(TAG, "refreshHeader group == firstVisibleGroupPos + 1, view=" + view + ", group=" + group);
-            if (view == null) {
-                Log.w(TAG, "Warning : refreshHeader getChildAt(1)=null");
-                return;
+        int firstVisibleGroupPos = mHeaderLayout.findPinnedGroup(firstVisiblePos); // 第一个可见的 Group 在所有 Group 中的索引
+
+        // 只有固定的 group 变化时才重新绑定头部
+        boolean headerChanged = false;
+        if (firstVisibleGroupPos != mPinnedGroupPosition) {
+            int oldPinnedGroupPos = mPinnedGroupPosition;
+            mPinnedGroupPosition = firstVisibleGroupPos;
+            if (firstVisibleGroupPos != INVALID_POSITION) {
+                if (firstVisibleGroupPos == mIncomingGroupPosition && mIncomingHeaderView != null) {
+                    // 正在进来的头部已经绑定过这个 group, 直接和固定的头部互换, 不用重新绑定
+                    View headerView = mHeaderView;
+                    int headerType = mHeaderType;
+                    mHeaderView = mIncomingHeaderView;
+                    mHeaderType = mIncomingHeaderType;
+                    mIncomingHeaderView = headerView;
+                    mIncomingHeaderType = headerType;
+                    mIncomingGroupPosition = headerView != null ? oldPinnedGroupPos : INVALID_POSITION;
+                    HeaderDrawingCache headerCache = mHeaderCache;
+                    mHeaderCache = mIncomingHeaderCache;
+                    mIncomingHeaderCache = headerCache;
+                } else {
+                    switchHeaderType(firstVisibleGroupPos);
+                    bindHeader(mHeaderView, firstVisibleGroupPos);
+                    ensureHeaderLaidOut(mHeaderView);
+                    mHeaderCache.invalidate();
+                }
+                headerChanged = true;
+                mHeaderWidth = mHeaderView.getMeasuredWidth();
+                mHeaderHeight = mHeaderView.getMeasuredHeight();
             }
-            Log.d(TAG, "refreshHeader view.getTop()=" + view.getTop() + ", mHeaderHeight=" + mHeaderHeight);
-            if (view.getTop() <= mHeaderHeight) {
-                int delta = mHeaderHeight - view.getTop();
-                Log.d(TAG, "refreshHeader delta=" + delta);
-                mHeaderView.layout(0, -delta, mHeaderWidth, mHeaderHeight - delta);
+        }
+        if (mHeaderView == null) {
+            return;
+        }
+
+        int delta = 0;
+        if (mHeaderLayout.isNextGroupAdjacent(firstVisiblePos, firstVisibleGroupPos)) { // 是两个相邻的 Group
+            int nextGroupTop;
+            if (mFixedItemHeights && mHeaderLayout.hasFixedItemHeights()) {
+                // 行高固定, 下一个 group 的位置等于第一个可见元素的位置加上它的行高
+                View firstView = getChildAt(0);
+                if (firstView == null) {
+                    return;
+                }
+                nextGroupTop = mHeaderLayout.computeNextGroupTop(firstVisiblePos, firstVisibleGroupPos,
+                        firstView.getTop(), getDividerHeight());
             } else {
-                //TODO : note it, when cause bug, remove it
-                mHeaderView.layout(0, 0, mHeaderWidth, mHeaderHeight);
+                View view = getChildAt(1); // 所获取的都是屏幕上可见的child, 而不是全部的 child. 这里的 getChildAt(1) 是一个 group 的 View
+                if (view == null) {
+                    return;
+                }
+                nextGroupTop = view.getTop();
+            }
+            delta = PinnedHeaderLayout.computeHeaderOffset(mHeaderHeight, nextGroupTop);
+        }
+
+        // 下一个 group 的头部和被顶上去的头部同时绘制
+        mIncomingHeaderVisible = mDrawIncomingHeader && delta > 0;
+        if (mIncomingHeaderVisible) {
+            if (mIncomingGroupPosition != firstVisibleGroupPos + 1) {
+                bindIncomingHeader(firstVisibleGroupPos + 1);
+            }
+            mIncomingHeaderTop = mHeaderHeight - delta;
+        }
+
+        // 头部只在 dispatchDraw 里平移, 被顶上去的距离变化时不需要重新布局
+        if (headerChanged || delta != mPinnedHeaderOffset) {
+            boolean offsetChanged = delta != mPinnedHeaderOffset;
+            mPinnedHeaderOffset = delta;
+            if (offsetChanged && mHeaderOffsetChangeListener != null) {
+                mHeaderOffsetChangeListener.onPinnedHeaderOffsetChanged(mHeaderView, mPinnedGroupPosition, delta);
+            }
+        }
+    }
+
+    /**
+     * 按 group 的类型换成对应的头部, 优先从回收池里取
+     */
+    private void switchHeaderType(int groupPosition) {
+        if (!(mHeaderUpdateListener instanceof OnTypedHeaderUpdateListener)) {
+            return;
+        }
+        int type = getHeaderType(groupPosition);
+        if (mHeaderView != null && type == mHeaderType) {
+            return;
+        }
+        if (mHeaderView != null) {
+            mHeaderPool.put(mHeaderType, mHeaderView);
+        }
+        mHeaderView = obtainHeaderView(type);
+        mHeaderType = type;
+    }
+
+    /**
+     * 绑定下一个 group 的头部, 它在固定的头部被顶上去时跟着一起绘制
+     */
+    private void bindIncomingHeader(int groupPosition) {
+        int type = getHeaderType(groupPosition);
+        if (mIncomingHeaderView == null || type != mIncomingHeaderType) {
+            if (mIncomingHeaderView != null) {
+                mHeaderPool.put(mIncomingHeaderType, mIncomingHeaderView);
             }
+            mIncomingHeaderView = obtainHeaderView(type);
+            mIncomingHeaderType = type;
+        }
+        mIncomingGroupPosition = groupPosition;
+        bindHeader(mIncomingHeaderView, groupPosition);
+        ensureHeaderLaidOut(mIncomingHeaderView);
+        mIncomingHeaderCache.invalidate();
+    }
+
+    private void bindHeader(View headerView, int groupPosition) {
+        mHeaderTouchMap.invalidate();
+        TraceSink traceSink = mTraceSink;
+        if (traceSink == null) {
+            mHeaderUpdateListener.updatePinnedHeader(headerView, groupPosition);
+            return;
+        }
+        long start = System.nanoTime();
+        mHeaderUpdateListener.updatePinnedHeader(headerView, groupPosition);
+        traceSink.onTraceEvent(TraceSink.EVENT_BIND_HEADER, System.nanoTime() - start);
+    }
+
+    private int getHeaderType(int groupPosition) {
+        if (mHeaderUpdateListener instanceof OnTypedHeaderUpdateListener
+                && mAdapter instanceof HeterogeneousExpandableList) {
+            HeterogeneousExpandableList adapter = (HeterogeneousExpandableList) mAdapter;
+            mHeaderPool.setTypeCount(adapter.getGroupTypeCount());
+            return adapter.getGroupType(groupPosition);
+        }
+        mHeaderPool.setTypeCount(1);
+        return 0;
+    }
+
+    /**
+     * 从回收池里取一个头部, 没有的话新建一个并测量、布局好
+     */
+    private View obtainHeaderView(int type) {
+        View headerView = mHeaderPool.get(type);
+        if (headerView != null) {
+            return headerView;
+        }
+        if (mHeaderUpdateListener instanceof OnTypedHeaderUpdateListener) {
+            headerView = ((OnTypedHeaderUpdateListener) mHeaderUpdateListener).getPinnedHeader(type);
         } else {
-            mHeaderView.layout(0, 0, mHeaderWidth, mHeaderHeight);
+            headerView = mHeaderUpdateListener.getPinnedHeader();
+        }
+        ensureHeaderLaidOut(headerView);
+        return headerView;
+    }
+
+    /**
+     * 头部的内容改变了尺寸(比如 setText 触发了 requestLayout)时重新测量和布局, 否则什么也不做
+     */
+    private void ensureHeaderLaidOut(View headerView) {
+        if (!mHeaderMeasureSpecValid) {
+            requestLayout();
+            return;
+        }
+        if (headerView.isLayoutRequested() || headerView.getMeasuredWidth() == 0) {
+            TraceSink traceSink = mTraceSink;
+            long start = traceSink != null ? System.nanoTime() : 0;
+            measureChild(headerView, mHeaderWidthMeasureSpec, mHeaderHeightMeasureSpec);
+            headerView.layout(0, 0, headerView.getMeasuredWidth(), headerView.getMeasuredHeight());
+            mHeaderTouchMap.invalidate();
+            if (traceSink != null) {
+                traceSink.onTraceEvent(TraceSink.EVENT_LAYOUT_HEADER, System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public void onGroupExpand(int groupPosition) {
+        onGroupExpandedChanged(groupPosition, true);
+        if (mGroupExpandListener != null) {
+            mGroupExpandListener.onGroupExpand(groupPosition);
         }
+    }
 
-        if (mHeaderUpdateListener != null) {
-            mHeaderUpdateListener.updatePinnedHeader(mHeaderView, firstVisibleGroupPos);
+    @Override
+    public void onGroupCollapse(int groupPosition) {
+        onGroupExpandedChanged(groupPosition, false);
+        if (mGroupCollapseListener != null) {
+            mGroupCollapseListener.onGroupCollapse(groupPosition);
         }
     }
 
@@ -307,6 +1276,7 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
     // 当滑动状态改变的时候回调
     @Override
     public void onScrollStateChanged(AbsListView view, int scrollState) {
+        mScrollState = scrollState;
         if (mScrollListener != null) {
             mScrollListener.onScrollStateChanged(view, scrollState);
         }
@@ -317,7 +1287,6 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
     @Override
     public void onScroll(AbsListView view, int firstVisibleItem,
                          int visibleItemCount, int totalItemCount) {
-        Log.d(TAG, "onScroll: view=" + view + ", firstVisibleItem=" + firstVisibleItem + ", visibleItemCount=" + visibleItemCount + ", totalItemCount=" + totalItemCount);
         if (totalItemCount > 0) {
             // 当获取到总的元素个数的时候, 就刷新 header
             refreshHeader();
@@ -327,4 +1296,48 @@ public class PinnedHeaderExpandableListView extends ExpandableListView implement
         }
     }
 
-}
\ No newline at end of file
+    static class SavedState extends BaseSavedState {
+        ExpansionState expansionState;
+        // 第一个可见的元素: 所在 group 的 id, 子元素的索引(是 group 本身时为 -1), 距离列表顶部的距离
+        boolean hasAnchor;
+        long anchorGroupId;
+        int anchorChildPosition;
+        int anchorTop;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel source) {
+            super(source);
+            expansionState = ExpansionState.CREATOR.createFromParcel(source);
+            hasAnchor = source.readInt() != 0;
+            anchorGroupId = source.readLong();
+            anchorChildPosition = source.readInt();
+            anchorTop = source.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+            expansionState.writeToParcel(dest, flags);
+            dest.writeInt(hasAnchor ? 1 : 0);
+            dest.writeLong(anchorGroupId);
+            dest.writeInt(anchorChildPosition);
+            dest.writeInt(anchorTop);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+}
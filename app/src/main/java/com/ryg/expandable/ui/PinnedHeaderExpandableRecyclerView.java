@@ -0,0 +1,371 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.ExpandableListAdapter;
+
+import com.ryg.expandable.core.GroupPositionIndex;
+import com.ryg.expandable.core.PinnedHeaderLayout;
+import com.ryg.expandable.ui.PinnedHeaderExpandableListView.OnHeaderUpdateListener;
+
+/**
+ * 基于 RecyclerView 的 {@link PinnedHeaderExpandableListView}
+ * <p>
+ * 使用同样的 ExpandableListAdapter 和 {@link OnHeaderUpdateListener}, 固定的头部用 ItemDecoration 绘制.
+ * 展开/折叠只插入或删除对应的条目, 可以使用 RecyclerView 的回收池共享、局部刷新和稳定 id 的动画.
+ */
+public class PinnedHeaderExpandableRecyclerView extends RecyclerView {
+
+    public interface OnGroupClickListener {
+        /**
+         * @return true 表示已经处理了点击, 不再展开或折叠这个 group
+         */
+        public boolean onGroupClick(PinnedHeaderExpandableRecyclerView parent, View v, int groupPosition, long id);
+    }
+
+    public interface OnChildClickListener {
+        public boolean onChildClick(PinnedHeaderExpandableRecyclerView parent, View v, int groupPosition,
+                                    int childPosition, long id);
+    }
+
+    private ExpandableRecyclerAdapter mAdapter;
+    private OnGroupClickListener mGroupClickListener;
+    private OnChildClickListener mChildClickListener;
+    protected boolean mIsHeaderGroupClickable = true;
+
+    private OnHeaderUpdateListener mHeaderUpdateListener;
+    private View mHeaderView;
+    private int mPinnedGroupPosition = NO_POSITION;
+    private int mPinnedHeaderOffset;
+    private int mHeaderWidthMeasureSpec;
+    private final HeaderTouchMap mHeaderTouchMap = new HeaderTouchMap();
+
+    private int mTouchSlop;
+
+    public PinnedHeaderExpandableRecyclerView(Context context) {
+        super(context);
+        initView();
+    }
+
+    public PinnedHeaderExpandableRecyclerView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        initView();
+    }
+
+    public PinnedHeaderExpandableRecyclerView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        initView();
+    }
+
+    private void initView() {
+        mTouchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+        setLayoutManager(new PinnedHeaderLayoutManager(getContext()));
+        addItemDecoration(new PinnedHeaderDecoration());
+        addOnItemTouchListener(new HeaderTouchListener());
+    }
+
+    public void setAdapter(ExpandableListAdapter adapter) {
+        if (mAdapter != null) {
+            mAdapter.unregisterAdapterDataObserver(mAdapterDataObserver);
+        }
+        mAdapter = adapter == null ? null : new ExpandableRecyclerAdapter(adapter);
+        if (mAdapter != null) {
+            mAdapter.setOnItemClickListener(mItemClickListener);
+            mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
+        }
+        mPinnedGroupPosition = NO_POSITION;
+        super.setAdapter(mAdapter);
+    }
+
+    public ExpandableListAdapter getExpandableListAdapter() {
+        return mAdapter == null ? null : mAdapter.getExpandableListAdapter();
+    }
+
+    public boolean expandGroup(int groupPosition) {
+        return mAdapter != null && mAdapter.expandGroup(groupPosition);
+    }
+
+    public boolean collapseGroup(int groupPosition) {
+        return mAdapter != null && mAdapter.collapseGroup(groupPosition);
+    }
+
+    public boolean isGroupExpanded(int groupPosition) {
+        return mAdapter != null && mAdapter.isGroupExpanded(groupPosition);
+    }
+
+    /**
+     * 给group添加点击事件监听
+     *
+     * @param onGroupClickListener   监听
+     * @param isHeaderGroupClickable 表示header是否可点击
+     */
+    public void setOnGroupClickListener(OnGroupClickListener onGroupClickListener, boolean isHeaderGroupClickable) {
+        mIsHeaderGroupClickable = isHeaderGroupClickable;
+        mGroupClickListener = onGroupClickListener;
+    }
+
+    public void setOnChildClickListener(OnChildClickListener onChildClickListener) {
+        mChildClickListener = onChildClickListener;
+    }
+
+    /**
+     * 设置头部更新监听
+     *
+     * @param listener 为 null, 则会取消头部固定的 View; 不为 null, 则会添加头部固定的 View.
+     */
+    public void setOnHeaderUpdateListener(OnHeaderUpdateListener listener) {
+        mHeaderUpdateListener = listener;
+        mHeaderView = listener == null ? null : listener.getPinnedHeader();
+        mHeaderWidthMeasureSpec = 0;
+        mPinnedGroupPosition = NO_POSITION;
+        refreshHeader();
+        invalidate();
+    }
+
+    /**
+     * 重新绑定并刷新头部, 在头部需要显示的内容变化时调用
+     */
+    public void requestRefreshHeader() {
+        mPinnedGroupPosition = NO_POSITION;
+        refreshHeader();
+        invalidate();
+    }
+
+    public int getPinnedGroupPosition() {
+        return mPinnedGroupPosition;
+    }
+
+    private void toggleGroup(View v, int groupPosition) {
+        ExpandableListAdapter adapter = mAdapter.getExpandableListAdapter();
+        if (mGroupClickListener != null && mGroupClickListener.onGroupClick(this, v, groupPosition,
+                adapter.getGroupId(groupPosition))) {
+            return;
+        }
+        if (mAdapter.isGroupExpanded(groupPosition)) {
+            mAdapter.collapseGroup(groupPosition);
+        } else {
+            mAdapter.expandGroup(groupPosition);
+        }
+    }
+
+    // 所有行共用一个点击监听, 从 ViewHolder 的位置找到对应的 group 或子元素
+    private final OnClickListener mItemClickListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            int position = getChildPosition(v);
+            if (position == NO_POSITION || mAdapter == null) {
+                return;
+            }
+            int groupPos = mAdapter.getGroupPosition(position);
+            int childPos = mAdapter.getChildPosition(position, groupPos);
+            if (childPos < 0) {
+                toggleGroup(v, groupPos);
+            } else if (mChildClickListener != null) {
+                mChildClickListener.onChildClick(PinnedHeaderExpandableRecyclerView.this, v, groupPos, childPos,
+                        mAdapter.getExpandableListAdapter().getChildId(groupPos, childPos));
+            }
+        }
+    };
+
+    // 数据或 group 的内容变化后, 头部在接下来的布局里重新绑定
+    private final AdapterDataObserver mAdapterDataObserver = new AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            mPinnedGroupPosition = NO_POSITION;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mPinnedGroupPosition = NO_POSITION;
+        }
+    };
+
+    /**
+     * 找出固定的 group 并算出头部被顶上去的距离
+     * <p>
+     * 只在固定的 group 变化时绑定, 宽度变化或绑定后头部请求重新布局时才重新测量. 在滚动和布局之后调用,
+     * 绘制时只做平移.
+     */
+    private void refreshHeader() {
+        if (mHeaderView == null || mAdapter == null || getChildCount() == 0) {
+            mPinnedGroupPosition = NO_POSITION;
+            return;
+        }
+        int firstVisiblePos = getChildPosition(getChildAt(0));
+        PinnedHeaderLayout headerLayout = mAdapter.getHeaderLayout();
+        int groupPos = firstVisiblePos == NO_POSITION ? -1 : headerLayout.findPinnedGroup(firstVisiblePos);
+        if (groupPos < 0) {
+            mPinnedGroupPosition = NO_POSITION;
+            return;
+        }
+        if (groupPos != mPinnedGroupPosition) {
+            mPinnedGroupPosition = groupPos;
+            mHeaderUpdateListener.updatePinnedHeader(mHeaderView, groupPos);
+            mHeaderTouchMap.invalidate();
+        }
+        int widthMeasureSpec = MeasureSpec.makeMeasureSpec(getWidth(), MeasureSpec.EXACTLY);
+        if (widthMeasureSpec != mHeaderWidthMeasureSpec || mHeaderView.isLayoutRequested()) {
+            mHeaderWidthMeasureSpec = widthMeasureSpec;
+            ViewGroup.LayoutParams lp = mHeaderView.getLayoutParams();
+            int heightMeasureSpec = lp != null && lp.height > 0
+                    ? MeasureSpec.makeMeasureSpec(lp.height, MeasureSpec.EXACTLY)
+                    : MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            mHeaderView.measure(widthMeasureSpec, heightMeasureSpec);
+            mHeaderView.layout(0, 0, mHeaderView.getMeasuredWidth(), mHeaderView.getMeasuredHeight());
+            mHeaderTouchMap.invalidate();
+        }
+
+        GroupPositionIndex index = mAdapter.getGroupIndex();
+        int delta = 0;
+        if (groupPos + 1 < index.getGroupCount()) {
+            View nextGroupView = getLayoutManager().findViewByPosition(index.getFlatPosition(groupPos + 1));
+            if (nextGroupView != null) {
+                delta = PinnedHeaderLayout.computeHeaderOffset(mHeaderView.getHeight(), nextGroupView.getTop());
+            }
+        }
+        mPinnedHeaderOffset = delta;
+    }
+
+    /**
+     * 滚动和布局之后刷新固定的头部
+     */
+    private class PinnedHeaderLayoutManager extends LinearLayoutManager {
+        PinnedHeaderLayoutManager(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void onLayoutChildren(Recycler recycler, State state) {
+            super.onLayoutChildren(recycler, state);
+            // 预布局里的条目还是动画开始前的位置
+            if (!state.isPreLayout()) {
+                refreshHeader();
+            }
+        }
+
+        @Override
+        public int scrollVerticallyBy(int dy, Recycler recycler, State state) {
+            int scrolled = super.scrollVerticallyBy(dy, recycler, state);
+            if (scrolled != 0) {
+                refreshHeader();
+            }
+            return scrolled;
+        }
+    }
+
+    /**
+     * 绘制固定的头部, 绑定和测量已经在滚动或布局时做完, 这里只做平移
+     */
+    private class PinnedHeaderDecoration extends ItemDecoration {
+        @Override
+        public void onDrawOver(Canvas c, RecyclerView parent, State state) {
+            if (mHeaderView == null || mPinnedGroupPosition == NO_POSITION) {
+                return;
+            }
+            int saveCount = c.save();
+            c.translate(0, -mPinnedHeaderOffset);
+            mHeaderView.draw(c);
+            c.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * 处理固定头部上的点击: 头部里可点击的子 View 优先, 否则展开/折叠固定的 group
+     */
+    private class HeaderTouchListener implements OnItemTouchListener {
+        private View mTouchTarget;
+        private int mTouchDownX;
+        private int mTouchDownY;
+
+        @Override
+        public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+            if ((e.getAction() & MotionEvent.ACTION_MASK) != MotionEvent.ACTION_DOWN
+                    || mHeaderView == null || mPinnedGroupPosition == NO_POSITION) {
+                return false;
+            }
+            int x = (int) e.getX();
+            int y = (int) e.getY();
+            if (!PinnedHeaderLayout.isInHeader(x, y, mHeaderView.getWidth(), mHeaderView.getHeight(),
+                    mPinnedHeaderOffset)) {
+                return false;
+            }
+            // 换算成头部里的坐标
+            y += mPinnedHeaderOffset;
+            mTouchDownX = x;
+            mTouchDownY = y;
+            mTouchTarget = mHeaderTouchMap.findTarget(mHeaderView, x, y);
+            mTouchTarget.setPressed(true);
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public void onTouchEvent(RecyclerView rv, MotionEvent e) {
+            if (mTouchTarget == null) {
+                return;
+            }
+            switch (e.getAction() & MotionEvent.ACTION_MASK) {
+            case MotionEvent.ACTION_MOVE:
+                if (Math.abs((int) e.getX() - mTouchDownX) > mTouchSlop
+                        || Math.abs((int) e.getY() + mPinnedHeaderOffset - mTouchDownY) > mTouchSlop) {
+                    release();
+                }
+                break;
+            case MotionEvent.ACTION_UP: {
+                View touchTarget = mTouchTarget;
+                release();
+                if (touchTarget.isClickable()) {
+                    touchTarget.performClick();
+                } else if (mIsHeaderGroupClickable && mPinnedGroupPosition != NO_POSITION) {
+                    toggleGroup(mHeaderView, mPinnedGroupPosition);
+                }
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                release();
+                break;
+            default:
+                break;
+            }
+        }
+
+        private void release() {
+            mTouchTarget.setPressed(false);
+            mTouchTarget = null;
+            invalidate();
+        }
+    }
+}
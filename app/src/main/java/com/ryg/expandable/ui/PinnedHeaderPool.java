@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.view.View;
+
+/**
+ * 按 group 类型回收固定头部的 View
+ * <p>
+ * 每种类型最多保留 {@link #MAX_SCRAP_PER_TYPE} 个, 放进来的 View 保持测量结果, 取出来可以直接使用.
+ */
+class PinnedHeaderPool {
+    private static final int MAX_SCRAP_PER_TYPE = 2;
+
+    private View[][] mScrapViews = new View[0][];
+    private int[] mScrapCounts = new int[0];
+
+    /**
+     * 类型个数变化时丢弃已回收的 View
+     */
+    void setTypeCount(int typeCount) {
+        if (typeCount == mScrapViews.length) {
+            return;
+        }
+        mScrapViews = new View[typeCount][MAX_SCRAP_PER_TYPE];
+        mScrapCounts = new int[typeCount];
+    }
+
+    View get(int type) {
+        if (type < 0 || type >= mScrapCounts.length || mScrapCounts[type] == 0) {
+            return null;
+        }
+        int index = --mScrapCounts[type];
+        View view = mScrapViews[type][index];
+        mScrapViews[type][index] = null;
+        return view;
+    }
+
+    void put(int type, View view) {
+        if (view == null || type < 0 || type >= mScrapCounts.length || mScrapCounts[type] == MAX_SCRAP_PER_TYPE) {
+            return;
+        }
+        mScrapViews[type][mScrapCounts[type]++] = view;
+    }
+
+    int getTypeCount() {
+        return mScrapCounts.length;
+    }
+
+    int getScrapCount(int type) {
+        return mScrapCounts[type];
+    }
+
+    View getScrapView(int type, int index) {
+        return mScrapViews[type][index];
+    }
+
+    void clear() {
+        for (int type = 0; type < mScrapCounts.length; type++) {
+            for (int i = 0; i < mScrapCounts[type]; i++) {
+                mScrapViews[type][i] = null;
+            }
+            mScrapCounts[type] = 0;
+        }
+    }
+}
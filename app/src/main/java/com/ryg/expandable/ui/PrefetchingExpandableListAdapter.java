@@ -0,0 +1,277 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseExpandableListAdapter;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 在后台线程预先加载行布局的 ExpandableListAdapter
+ * <p>
+ * 调用 {@link #prefetch} 后, group 和子元素的布局在后台线程 inflate 好放进池子里,
+ * ListView 第一次需要新的行 View 时直接从池子里取, 池子空了才在主线程 inflate.
+ * 子类只负责创建 holder 和按 holder 绑定数据; 行里的按钮可以共用 {@link #getRowClickListener()},
+ * 点击时通过 holder 找到所在的位置.
+ *
+ * @param <GH> group 的 holder
+ * @param <CH> 子元素的 holder
+ */
+public abstract class PrefetchingExpandableListAdapter<GH extends PrefetchingExpandableListAdapter.RowHolder,
+        CH extends PrefetchingExpandableListAdapter.RowHolder> extends BaseExpandableListAdapter {
+
+    // 所有 adapter 共用一个后台线程, inflate 本身是串行的
+    private static ExecutorService sInflateExecutor;
+
+    private final LayoutInflater mInflater;
+    // LayoutInflater 不是线程安全的, 后台线程用自己的一份, 不和主线程共用
+    private final LayoutInflater mPrefetchInflater;
+    private final int mGroupLayoutId;
+    private final int mChildLayoutId;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // 只在主线程访问, 当作栈使用(ArrayDeque 在 API 9 才有)
+    private final ArrayList<GH> mGroupPool = new ArrayList<GH>();
+    private final ArrayList<CH> mChildPool = new ArrayList<CH>();
+    private volatile int mPrefetchGeneration;
+    private TraceSink mTraceSink;
+
+    private final View.OnClickListener mRowClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            RowHolder holder = (RowHolder) v.getTag();
+            if (holder != null) {
+                onRowViewClick(v, holder.mGroupPosition, holder.mChildPosition);
+            }
+        }
+    };
+
+    /**
+     * 行 View 的 holder, 保存在行 View 的 tag 里
+     */
+    public static class RowHolder {
+        public final View itemView;
+        private int mGroupPosition;
+        private int mChildPosition = -1;
+
+        public RowHolder(View itemView) {
+            this.itemView = itemView;
+        }
+
+        public int getGroupPosition() {
+            return mGroupPosition;
+        }
+
+        /**
+         * @return 子元素的索引, group 的 holder 返回 -1
+         */
+        public int getChildPosition() {
+            return mChildPosition;
+        }
+
+        /**
+         * 让行里的子 View 使用 {@link #getRowClickListener()}, 点击时能找到这一行
+         */
+        public void bindRowClick(View view, PrefetchingExpandableListAdapter<?, ?> adapter) {
+            view.setTag(this);
+            view.setOnClickListener(adapter.getRowClickListener());
+        }
+    }
+
+    protected PrefetchingExpandableListAdapter(Context context, int groupLayoutId, int childLayoutId) {
+        mInflater = LayoutInflater.from(context);
+        mPrefetchInflater = mInflater.cloneInContext(context);
+        mGroupLayoutId = groupLayoutId;
+        mChildLayoutId = childLayoutId;
+    }
+
+    /**
+     * 创建 group 的 holder, 可能在后台线程调用, 只能查找子 View 和设置监听, 不能访问已经显示的界面
+     */
+    protected abstract GH onCreateGroupHolder(View groupView);
+
+    /**
+     * 创建子元素的 holder, 可能在后台线程调用, 只能查找子 View 和设置监听, 不能访问已经显示的界面
+     */
+    protected abstract CH onCreateChildHolder(View childView);
+
+    protected abstract void onBindGroupHolder(GH holder, int groupPosition, boolean isExpanded);
+
+    protected abstract void onBindChildHolder(CH holder, int groupPosition, int childPosition, boolean isLastChild);
+
+    /**
+     * 通过 {@link RowHolder#bindRowClick} 设置的子 View 被点击
+     *
+     * @param childPosition 点击的是 group 里的 View 时为 -1
+     */
+    protected void onRowViewClick(View view, int groupPosition, int childPosition) {
+    }
+
+    /**
+     * 设置打点的接收者, 为 null 时关闭打点; 每次绑定行 View 时记录一次
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        mTraceSink = traceSink;
+    }
+
+    public TraceSink getTraceSink() {
+        return mTraceSink;
+    }
+
+    public View.OnClickListener getRowClickListener() {
+        return mRowClickListener;
+    }
+
+    /**
+     * 在后台线程预先加载行布局, 在主线程调用, 一般在列表第一次显示前
+     *
+     * @param parent     行 View 的父布局, 用来生成 LayoutParams, 不会被修改
+     * @param groupCount 预先加载的 group 个数
+     * @param childCount 预先加载的子元素个数
+     */
+    public void prefetch(final ViewGroup parent, final int groupCount, final int childCount) {
+        final int generation = ++mPrefetchGeneration;
+        getInflateExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < groupCount + childCount; i++) {
+                    if (generation != mPrefetchGeneration) {
+                        return;
+                    }
+                    final boolean isGroup = i < groupCount;
+                    final RowHolder holder;
+                    try {
+                        View view = mPrefetchInflater.inflate(isGroup ? mGroupLayoutId : mChildLayoutId, parent, false);
+                        holder = isGroup ? onCreateGroupHolder(view) : onCreateChildHolder(view);
+                    } catch (RuntimeException e) {
+                        // 布局里有只能在主线程创建的 View, 剩下的留给主线程按需 inflate
+                        return;
+                    }
+                    mHandler.post(new Runnable() {
+                        @SuppressWarnings("unchecked")
+                        @Override
+                        public void run() {
+                            if (generation != mPrefetchGeneration) {
+                                return;
+                            }
+                            if (isGroup) {
+                                mGroupPool.add((GH) holder);
+                            } else {
+                                mChildPool.add((CH) holder);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 停止预加载并清空池子, 页面销毁时调用
+     */
+    public void cancelPrefetch() {
+        mPrefetchGeneration++;
+        mGroupPool.clear();
+        mChildPool.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final View getGroupView(int groupPosition, boolean isExpanded, View convertView, ViewGroup parent) {
+        GH holder;
+        if (convertView == null) {
+            holder = poll(mGroupPool);
+            if (holder == null) {
+                holder = onCreateGroupHolder(mInflater.inflate(mGroupLayoutId, parent, false));
+            }
+            holder.itemView.setTag(holder);
+        } else {
+            holder = (GH) convertView.getTag();
+        }
+        setPosition(holder, groupPosition, -1);
+        TraceSink traceSink = mTraceSink;
+        if (traceSink == null) {
+            onBindGroupHolder(holder, groupPosition, isExpanded);
+            return holder.itemView;
+        }
+        long start = System.nanoTime();
+        onBindGroupHolder(holder, groupPosition, isExpanded);
+        traceSink.onTraceEvent(TraceSink.EVENT_BIND_GROUP_VIEW, System.nanoTime() - start);
+        return holder.itemView;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final View getChildView(int groupPosition, int childPosition, boolean isLastChild,
+                                   View convertView, ViewGroup parent) {
+        CH holder;
+        if (convertView == null) {
+            holder = poll(mChildPool);
+            if (holder == null) {
+                holder = onCreateChildHolder(mInflater.inflate(mChildLayoutId, parent, false));
+            }
+            holder.itemView.setTag(holder);
+        } else {
+            holder = (CH) convertView.getTag();
+        }
+        setPosition(holder, groupPosition, childPosition);
+        TraceSink traceSink = mTraceSink;
+        if (traceSink == null) {
+            onBindChildHolder(holder, groupPosition, childPosition, isLastChild);
+            return holder.itemView;
+        }
+        long start = System.nanoTime();
+        onBindChildHolder(holder, groupPosition, childPosition, isLastChild);
+        traceSink.onTraceEvent(TraceSink.EVENT_BIND_CHILD_VIEW, System.nanoTime() - start);
+        return holder.itemView;
+    }
+
+    // 字段是 RowHolder 私有的, 不能通过类型参数 GH/CH 直接访问
+    private static void setPosition(RowHolder holder, int groupPosition, int childPosition) {
+        holder.mGroupPosition = groupPosition;
+        holder.mChildPosition = childPosition;
+    }
+
+    private static <T> T poll(ArrayList<T> pool) {
+        int size = pool.size();
+        return size > 0 ? pool.remove(size - 1) : null;
+    }
+
+    private static synchronized ExecutorService getInflateExecutor() {
+        if (sInflateExecutor == null) {
+            sInflateExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sInflateExecutor;
+    }
+}
@@ -32,16 +32,21 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.support.v4.view.ViewCompat;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.AbsListView;
 import android.widget.LinearLayout;
+import android.widget.Scroller;
 
 
 public class StickyLayout extends LinearLayout {
-    private static final String TAG = "StickyLayout";
-    private static final boolean DEBUG = true;
 
     public interface OnGiveUpTouchEventListener {
         /**
@@ -64,7 +69,30 @@ public class StickyLayout extends LinearLayout {
     public static final int STATUS_EXPANDED = 1;
     public static final int STATUS_COLLAPSED = 2;
 
+    // 折叠方式: 修改头部 LayoutParams.height 并重新布局
+    public static final int COLLAPSE_MODE_RESIZE = 0;
+    // 折叠方式: 只对头部和内容做 offsetTopAndBottom, 超出的部分被裁剪, 不重新测量和布局
+    public static final int COLLAPSE_MODE_OFFSET = 1;
+    private int mCollapseMode = COLLAPSE_MODE_RESIZE;
+    // 偏移模式下头部和内容当前向上偏移的距离  单位：px
+    private int mCollapseOffset;
+
     private int mTouchSlop;
+    private int mMinimumFlingVelocity;
+    private int mMaximumFlingVelocity;
+    private VelocityTracker mVelocityTracker;
+
+    // 松手后头部回弹的最长时间, 实际时间按剩余距离等比缩放  单位：ms
+    private static final int MAX_SETTLE_DURATION = 500;
+
+    // 头部折叠完后接着滚动的列表, 以及用来估算低版本上惯性滑动距离的 Scroller
+    private AbsListView mScrollTarget;
+    private Scroller mFlingEstimator;
+
+    // 列表正在通过嵌套滑动协议和头部联动, 此时不再走 onInterceptTouchEvent 的拦截判断
+    private boolean mNestedScrollInProgress;
+
+    private TraceSink mTraceSink;
 
     // 分别记录上次滑动的坐标
     private int mLastX = 0;
@@ -74,13 +102,14 @@ public class StickyLayout extends LinearLayout {
     private int mLastXIntercept = 0;
     private int mLastYIntercept = 0;
 
-    // 用来控制滑动角度，仅当角度a满足如下条件才进行滑动：tan a = deltaX / deltaY > 2
-    private static final int TAN = 2;
-
     private boolean mIsSticky = true;
     private boolean mInitDataSucceed = false;
     private boolean mDisallowInterceptTouchEventOnHeader = true;
 
+    // 头部高度动画, 跟随屏幕刷新(vsync)逐帧推进, 不再为每次动画起线程
+    private final HeaderAnimation mHeaderAnimation = new HeaderAnimation();
+    private Interpolator mInterpolator = new DecelerateInterpolator();
+
     public StickyLayout(Context context) {
         super(context);
     }
@@ -111,18 +140,109 @@ public class StickyLayout extends LinearLayout {
             mContent = findViewById(contentId);
             mOriginalHeaderHeight = mHeader.getMeasuredHeight(); // 获取 Header 的高度
             mHeaderHeight = mOriginalHeaderHeight;
-            mTouchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop(); // 滑动的最小距离
+            ViewConfiguration configuration = ViewConfiguration.get(getContext());
+            mTouchSlop = configuration.getScaledTouchSlop(); // 滑动的最小距离
+            mMinimumFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+            mMaximumFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+            mScrollTarget = findScrollTarget(mContent);
             if (mHeaderHeight > 0) {
                 mInitDataSucceed = true;
             }
-            if (DEBUG) {
-                Log.d(TAG, "mTouchSlop = " + mTouchSlop + "mHeaderHeight = " + mHeaderHeight);
+            if (mCollapseMode == COLLAPSE_MODE_OFFSET) {
+                // 内容需要按折叠后的高度重新测量一次
+                requestLayout();
             }
         } else {
             throw new NoSuchElementException("Did your view with id \"sticky_header\" or \"sticky_content\" exists?");
         }
     }
 
+    /**
+     * 设置头部的折叠方式
+     * @param collapseMode {@link #COLLAPSE_MODE_RESIZE} 或 {@link #COLLAPSE_MODE_OFFSET}
+     */
+    public void setCollapseMode(int collapseMode) {
+        if (collapseMode != COLLAPSE_MODE_RESIZE && collapseMode != COLLAPSE_MODE_OFFSET) {
+            throw new IllegalArgumentException("Unknown collapse mode: " + collapseMode);
+        }
+        if (mCollapseMode == collapseMode) {
+            return;
+        }
+        mCollapseMode = collapseMode;
+        if (mHeader != null && mHeader.getLayoutParams() != null) {
+            // 切换方式时, 头部的高度由新的方式接管
+            mHeader.getLayoutParams().height = collapseMode == COLLAPSE_MODE_OFFSET
+                    ? mOriginalHeaderHeight : mHeaderHeight;
+        }
+        mCollapseOffset = 0;
+        requestLayout();
+    }
+
+    public int getCollapseMode() {
+        return mCollapseMode;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (mCollapseMode == COLLAPSE_MODE_OFFSET && mContent != null && mContent.getParent() == this
+                && mContent.getVisibility() != GONE && getOrientation() == VERTICAL
+                && MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            measureForOffsetMode(widthMeasureSpec, heightMeasureSpec);
+        } else {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_MEASURE, 0);
+        }
+    }
+
+    /**
+     * 偏移模式下, 内容按头部完全折叠时的高度测量, 这样折叠过程中只需要移动, 不需要重新测量.
+     * 内容直接按这个高度测量一次, 不先走 LinearLayout 的测量, 避免列表每次都被测量两遍.
+     */
+    private void measureForOffsetMode(int widthMeasureSpec, int heightMeasureSpec) {
+        int maxWidth = 0;
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            View child = getChildAt(i);
+            if (child == mContent || child.getVisibility() == GONE) {
+                continue;
+            }
+            measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, 0);
+            LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            maxWidth = Math.max(maxWidth, child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin);
+        }
+
+        // 高度不是 UNSPECIFIED 时, 内容占满整个布局
+        int measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
+        LayoutParams lp = (LayoutParams) mContent.getLayoutParams();
+        int height = measuredHeight - getPaddingTop() - getPaddingBottom() - lp.topMargin - lp.bottomMargin;
+        int childWidthMeasureSpec = getChildMeasureSpec(widthMeasureSpec,
+                getPaddingLeft() + getPaddingRight() + lp.leftMargin + lp.rightMargin, lp.width);
+        mContent.measure(childWidthMeasureSpec, MeasureSpec.makeMeasureSpec(Math.max(0, height), MeasureSpec.EXACTLY));
+        maxWidth = Math.max(maxWidth, mContent.getMeasuredWidth() + lp.leftMargin + lp.rightMargin);
+
+        maxWidth = Math.max(maxWidth + getPaddingLeft() + getPaddingRight(), getSuggestedMinimumWidth());
+        // resolveSizeAndState 在 API 11 才有
+        setMeasuredDimension(resolveSize(maxWidth, widthMeasureSpec), measuredHeight);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_LAYOUT, 0);
+        }
+        if (mCollapseMode != COLLAPSE_MODE_OFFSET || mHeader == null || mContent == null) {
+            return;
+        }
+        // 布局会把偏移清掉, 这里按当前的头部高度重新偏移回去
+        mCollapseOffset = Math.max(0, mHeader.getHeight() - mHeaderHeight);
+        if (mCollapseOffset != 0) {
+            mHeader.offsetTopAndBottom(-mCollapseOffset);
+            mContent.offsetTopAndBottom(-mCollapseOffset);
+        }
+    }
+
     public void setOnGiveUpTouchEventListener(OnGiveUpTouchEventListener l) {
         mGiveUpTouchEventListener = l;
     }
@@ -136,6 +256,14 @@ public class StickyLayout extends LinearLayout {
 
         switch (event.getAction()) {
         case MotionEvent.ACTION_DOWN: {
+            // 新的手势开始, 停止还在进行的头部动画
+            mHeaderAnimation.cancel();
+            if (mVelocityTracker == null) {
+                mVelocityTracker = VelocityTracker.obtain();
+            } else {
+                mVelocityTracker.clear();
+            }
+            mVelocityTracker.addMovement(event);
             mLastXIntercept = x;
             mLastYIntercept = y;
             mLastX = x;
@@ -144,25 +272,26 @@ public class StickyLayout extends LinearLayout {
             break;
         }
         case MotionEvent.ACTION_MOVE: {
+            if (mVelocityTracker != null) {
+                mVelocityTracker.addMovement(event);
+            }
             int deltaX = x - mLastXIntercept;
             int deltaY = y - mLastYIntercept;
-            if (mDisallowInterceptTouchEventOnHeader && y <= getHeaderHeight()) {
-                Log.d(TAG, "onInterceptTouchEvent: 1");
+            if (mNestedScrollInProgress) {
+                // 列表会通过 onNestedPreScroll/onNestedScroll 把滑动交过来
+                intercepted = false;
+            } else if (mDisallowInterceptTouchEventOnHeader && y <= getHeaderHeight()) {
                 intercepted = false;
             } else if (Math.abs(deltaY) <= Math.abs(deltaX)) {
-                Log.d(TAG, "onInterceptTouchEvent: 2");
                 // 是横向滑动时, 不拦截
                 intercepted = false;
             } else if (mStatus == STATUS_EXPANDED && deltaY <= -mTouchSlop) {
-                Log.d(TAG, "onInterceptTouchEvent: 3");
                 // 展开状态并且在向上滑动列表
                 intercepted = true;
             } else if (mGiveUpTouchEventListener != null) {
                 if (mGiveUpTouchEventListener.giveUpTouchEvent(event) && deltaY >= mTouchSlop) {
-                    Log.d(TAG, "onInterceptTouchEvent: 4");
                     intercepted = true;
                 }
-                Log.d(TAG, "onInterceptTouchEvent: 5");
             }
             break;
         }
@@ -174,10 +303,6 @@ public class StickyLayout extends LinearLayout {
         default:
             break;
         }
-
-        if (DEBUG) {
-            Log.d(TAG, "onInterceptTouchEvent: intercepted=" + intercepted);
-        }
         return intercepted && mIsSticky;
     }
     // 触摸事件
@@ -186,6 +311,14 @@ public class StickyLayout extends LinearLayout {
         if (!mIsSticky) {
             return true;
         }
+        // 拦截之后的事件不再经过 onInterceptTouchEvent, 在这里记录每一个事件, 松手时的速度才准确.
+        // ACTION_DOWN 总会先经过 onInterceptTouchEvent, 已经记录过了
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+            mVelocityTracker.addMovement(event);
+        } else if (event.getAction() != MotionEvent.ACTION_DOWN) {
+            mVelocityTracker.addMovement(event);
+        }
         int x = (int) event.getX();
         int y = (int) event.getY();
         switch (event.getAction()) {
@@ -194,25 +327,23 @@ public class StickyLayout extends LinearLayout {
         }
         case MotionEvent.ACTION_MOVE: {
             int deltaY = y - mLastY;
-            if (DEBUG) {
-                Log.d(TAG, "mHeaderHeight=" + mHeaderHeight + "  deltaY=" + deltaY + "  mlastY=" + mLastY);
-            }
             mHeaderHeight += deltaY;
             setHeaderHeight(mHeaderHeight);
             break;
         }
         case MotionEvent.ACTION_UP: {
-            // 这里做了下判断，当松开手的时候，会自动向两边滑动，具体向哪边滑，要看当前所处的位置
-            int destHeight;
-            if (mHeaderHeight <= mOriginalHeaderHeight * 0.5) {
-                destHeight = 0;
-                mStatus = STATUS_COLLAPSED;
-            } else {
-                destHeight = mOriginalHeaderHeight;
-                mStatus = STATUS_EXPANDED;
+            float velocityY = 0;
+            if (mVelocityTracker != null) {
+                mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
+                velocityY = mVelocityTracker.getYVelocity();
             }
-            // 慢慢滑向终点
-            this.smoothSetHeaderHeight(mHeaderHeight, destHeight, 500);
+            releaseVelocityTracker();
+            settleHeader(velocityY);
+            break;
+        }
+        case MotionEvent.ACTION_CANCEL: {
+            releaseVelocityTracker();
+            settleHeader(0);
             break;
         }
         default:
@@ -223,46 +354,199 @@ public class StickyLayout extends LinearLayout {
         return true;
     }
 
+    /**
+     * 松手后让头部滑向终点
+     * <p>
+     * 速度超过最小惯性速度时按手指方向展开或折叠, 并以松手时的速度匀速滑完剩余距离;
+     * 向上甩动折叠后, 剩余的速度交给列表继续滚动. 否则按当前位置决定滑向哪边, 时间随剩余距离缩放.
+     *
+     * @param velocityY 松手时的竖直速度, 向上为负  单位：px/s
+     */
+    private void settleHeader(float velocityY) {
+        boolean fling = Math.abs(velocityY) >= mMinimumFlingVelocity && mMinimumFlingVelocity > 0;
+        int destHeight;
+        if (fling) {
+            destHeight = velocityY < 0 ? 0 : mOriginalHeaderHeight;
+        } else if (mHeaderHeight <= mOriginalHeaderHeight * 0.5) {
+            destHeight = 0;
+        } else {
+            destHeight = mOriginalHeaderHeight;
+        }
+        mStatus = destHeight == 0 ? STATUS_COLLAPSED : STATUS_EXPANDED;
+
+        int distance = Math.abs(destHeight - mHeaderHeight);
+        if (fling) {
+            long duration = Math.min(MAX_SETTLE_DURATION, (long) (distance * 1000 / Math.abs(velocityY)));
+            // 向上甩时, 列表接着以同样的速度滚动(列表的正方向和手指方向相反)
+            int leftoverVelocity = destHeight == 0 ? (int) -velocityY : 0;
+            mHeaderAnimation.start(mHeaderHeight, destHeight, duration, false, false, leftoverVelocity);
+        } else {
+            long duration = mOriginalHeaderHeight > 0 ? MAX_SETTLE_DURATION * distance / mOriginalHeaderHeight : 0;
+            smoothSetHeaderHeight(mHeaderHeight, destHeight, duration);
+        }
+    }
+
+    private void releaseVelocityTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    /**
+     * 让列表以给定速度惯性滚动
+     * @param velocityY 列表的滚动速度, 正数表示内容向上滚动  单位：px/s
+     */
+    private void flingScrollTarget(int velocityY) {
+        if (mScrollTarget == null || velocityY == 0) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            flingScrollTargetLollipop(velocityY);
+            return;
+        }
+        // 低版本没有 AbsListView#fling, 用 Scroller 估算惯性滑动的距离和时间
+        if (mFlingEstimator == null) {
+            mFlingEstimator = new Scroller(getContext());
+        }
+        mFlingEstimator.fling(0, 0, 0, velocityY, 0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        mScrollTarget.smoothScrollBy(mFlingEstimator.getFinalY(), mFlingEstimator.getDuration());
+        mFlingEstimator.abortAnimation();
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void flingScrollTargetLollipop(int velocityY) {
+        mScrollTarget.fling(velocityY);
+    }
+
+    private static AbsListView findScrollTarget(View view) {
+        if (view instanceof AbsListView) {
+            return (AbsListView) view;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0, count = group.getChildCount(); i < count; i++) {
+                AbsListView target = findScrollTarget(group.getChildAt(i));
+                if (target != null) {
+                    return target;
+                }
+            }
+        }
+        return null;
+    }
+
     public void smoothSetHeaderHeight(final int from, final int to, long duration) {
         smoothSetHeaderHeight(from, to, duration, false);
     }
 
     public void smoothSetHeaderHeight(final int from, final int to, long duration, final boolean modifyOriginalHeaderHeight) {
-        final int frameCount = (int) (duration / 1000f * 30) + 1;
-        final float partation = (to - from) / (float) frameCount;
-        new Thread("Thread#smoothSetHeaderHeight") {
-
-            @Override
-            public void run() {
-                for (int i = 0; i < frameCount; i++) {
-                    final int height;
-                    if (i == frameCount - 1) {
-                        height = to;
-                    } else {
-                        height = (int) (from + partation * i);
-                    }
-                    post(new Runnable() {
-                        public void run() {
-                            setHeaderHeight(height);
-                        }
-                    });
-                    try {
-                        sleep(10);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+        mHeaderAnimation.start(from, to, duration, modifyOriginalHeaderHeight, true, 0);
+    }
 
-                if (modifyOriginalHeaderHeight) {
-                    setOriginalHeaderHeight(to);
-                }
-            };
+    /**
+     * 停止正在进行的头部动画, 头部停在当前高度
+     */
+    public void cancelHeaderAnimation() {
+        mHeaderAnimation.cancel();
+    }
+
+    public boolean isHeaderAnimating() {
+        return mHeaderAnimation.mRunning;
+    }
+
+    /**
+     * 设置头部动画的插值器
+     * @param interpolator 为 null 时使用线性插值
+     */
+    public void setInterpolator(Interpolator interpolator) {
+        mInterpolator = interpolator;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mHeaderAnimation.cancel();
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * 头部高度动画
+     * <p>
+     * 通过 postOnAnimation 挂在下一帧的动画回调上(API 16 以上由 Choreographer 驱动),
+     * 按流逝的时间计算进度, 所以帧率是多少就刷新多少次; 整个动画复用同一个对象, 每帧不分配内存.
+     */
+    private class HeaderAnimation implements Runnable {
+        private int mFrom;
+        private int mTo;
+        private long mStartTime;
+        private long mDuration;
+        private boolean mModifyOriginalHeaderHeight;
+        private boolean mInterpolate;
+        // 动画结束后交给列表的惯性速度
+        private int mLeftoverVelocity;
+        private boolean mRunning;
+
+        void start(int from, int to, long duration, boolean modifyOriginalHeaderHeight,
+                   boolean interpolate, int leftoverVelocity) {
+            cancel();
+            mFrom = from;
+            mTo = to;
+            mDuration = duration;
+            mModifyOriginalHeaderHeight = modifyOriginalHeaderHeight;
+            mInterpolate = interpolate;
+            mLeftoverVelocity = leftoverVelocity;
+            if (duration <= 0 || from == to) {
+                finish();
+                return;
+            }
+            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mRunning = true;
+            setHeaderHeight(from);
+            ViewCompat.postOnAnimation(StickyLayout.this, this);
+        }
+
+        void cancel() {
+            if (mRunning) {
+                mRunning = false;
+                removeCallbacks(this);
+            }
+        }
 
-        }.start();
+        private void finish() {
+            mRunning = false;
+            setHeaderHeight(mTo);
+            if (mModifyOriginalHeaderHeight) {
+                setOriginalHeaderHeight(mTo);
+            }
+            flingScrollTarget(mLeftoverVelocity);
+        }
+
+        @Override
+        public void run() {
+            if (!mRunning) {
+                return;
+            }
+            long elapsed = AnimationUtils.currentAnimationTimeMillis() - mStartTime;
+            if (elapsed >= mDuration) {
+                finish();
+                return;
+            }
+            float fraction = elapsed / (float) mDuration;
+            if (mInterpolate && mInterpolator != null) {
+                fraction = mInterpolator.getInterpolation(fraction);
+            }
+            setHeaderHeight(Math.round(mFrom + (mTo - mFrom) * fraction));
+            ViewCompat.postOnAnimation(StickyLayout.this, this);
+        }
     }
 
     public void setOriginalHeaderHeight(int originalHeaderHeight) {
         mOriginalHeaderHeight = originalHeaderHeight;
+        if (mCollapseMode == COLLAPSE_MODE_OFFSET && mHeader != null && mHeader.getLayoutParams() != null
+                && mHeader.getLayoutParams().height != originalHeaderHeight) {
+            // 偏移模式下头部始终保持原始高度, 原始高度变化时才需要重新布局
+            mHeader.getLayoutParams().height = originalHeaderHeight;
+            mHeader.requestLayout();
+        }
     }
 
     public void setHeaderHeight(int height, boolean modifyOriginalHeaderHeight) {
@@ -277,13 +561,21 @@ public class StickyLayout extends LinearLayout {
      * @param height
      */
     public void setHeaderHeight(int height) {
+        TraceSink traceSink = mTraceSink;
+        if (traceSink == null) {
+            applyHeaderHeight(height);
+            return;
+        }
+        long start = System.nanoTime();
+        applyHeaderHeight(height);
+        traceSink.onTraceEvent(TraceSink.EVENT_SET_HEADER_HEIGHT, System.nanoTime() - start);
+    }
+
+    private void applyHeaderHeight(int height) {
         if (!mInitDataSucceed) {
             initData();
         }
 
-        if (DEBUG) {
-            Log.d(TAG, "setHeaderHeight height=" + height);
-        }
         if (height <= 0) {
             height = 0;
         } else if (height > mOriginalHeaderHeight) {
@@ -296,21 +588,111 @@ public class StickyLayout extends LinearLayout {
             mStatus = STATUS_EXPANDED;
         }
 
-        if (mHeader != null && mHeader.getLayoutParams() != null) {
+        if (mCollapseMode == COLLAPSE_MODE_OFFSET && mHeader != null && mContent != null) {
+            // 只移动头部和内容, 不触发测量和布局
+            int offset = Math.max(0, mHeader.getHeight() - height);
+            int delta = mCollapseOffset - offset;
+            if (delta != 0) {
+                mHeader.offsetTopAndBottom(delta);
+                mContent.offsetTopAndBottom(delta);
+                mCollapseOffset = offset;
+            }
+            mHeaderHeight = height;
+        } else if (mHeader != null && mHeader.getLayoutParams() != null) {
             mHeader.getLayoutParams().height = height;
             mHeader.requestLayout();
             mHeaderHeight = height;
-        } else {
-            if (DEBUG) {
-                Log.e(TAG, "null LayoutParams when setHeaderHeight");
+            if (mTraceSink != null) {
+                mTraceSink.onTraceEvent(TraceSink.EVENT_REQUEST_LAYOUT, 0);
             }
         }
     }
 
+    /**
+     * 设置打点的接收者, 为 null 时关闭打点
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        mTraceSink = traceSink;
+    }
+
+    public TraceSink getTraceSink() {
+        return mTraceSink;
+    }
+
     public int getHeaderHeight() {
         return mHeaderHeight;
     }
 
+    // 嵌套滑动: 列表(API 21 以上)在滚动前后把位移交给这里, 头部的折叠和列表的滚动在同一帧完成.
+    // 只在偏移模式下启用, 因为列表需要在 dispatchNestedPreScroll 返回时就看到自己位置的变化;
+    // 修改高度的方式要等下一次布局才生效, 仍然走 onInterceptTouchEvent.
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public boolean onStartNestedScroll(View child, View target, int nestedScrollAxes) {
+        return mIsSticky && mCollapseMode == COLLAPSE_MODE_OFFSET
+                && (nestedScrollAxes & SCROLL_AXIS_VERTICAL) != 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public void onNestedScrollAccepted(View child, View target, int axes) {
+        super.onNestedScrollAccepted(child, target, axes);
+        if (!mInitDataSucceed) {
+            initData();
+        }
+        mHeaderAnimation.cancel();
+        mNestedScrollInProgress = true;
+    }
+
+    @Override
+    public void onNestedPreScroll(View target, int dx, int dy, int[] consumed) {
+        // 内容向上滚动时先折叠头部
+        if (dy > 0 && mHeaderHeight > 0) {
+            int consumedY = Math.min(dy, mHeaderHeight);
+            setHeaderHeight(mHeaderHeight - consumedY);
+            consumed[1] = consumedY;
+        }
+    }
+
+    @Override
+    public void onNestedScroll(View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed) {
+        // 列表已经到顶还在往下拉, 剩下的位移用来展开头部
+        if (dyUnconsumed < 0 && mHeaderHeight < mOriginalHeaderHeight) {
+            setHeaderHeight(mHeaderHeight - dyUnconsumed);
+        }
+    }
+
+    @Override
+    public boolean onNestedPreFling(View target, float velocityX, float velocityY) {
+        // 头部还没完全折叠时由头部接住这次甩动, 折叠完后剩余的速度再交还给列表
+        if (velocityY > 0 && mHeaderHeight > 0) {
+            settleHeader(-velocityY);
+            return true;
+        }
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public boolean onNestedFling(View target, float velocityX, float velocityY, boolean consumed) {
+        if (velocityY < 0 && mHeaderHeight < mOriginalHeaderHeight && !target.canScrollVertically(-1)) {
+            settleHeader(-velocityY);
+            return true;
+        }
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public void onStopNestedScroll(View child) {
+        super.onStopNestedScroll(child);
+        mNestedScrollInProgress = false;
+        if (!mHeaderAnimation.mRunning && mHeaderHeight > 0 && mHeaderHeight < mOriginalHeaderHeight) {
+            settleHeader(0);
+        }
+    }
+
     public void setSticky(boolean isSticky) {
         mIsSticky = isSticky;
     }
@@ -0,0 +1,67 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+/**
+ * 累计每种打点事件的次数和耗时的 {@link TraceSink}
+ * <p>
+ * 只能在主线程使用, 需要上报时读取后调用 {@link #reset()}.
+ */
+public class TraceCounters implements TraceSink {
+    private final long[] mCounts = new long[EVENT_COUNT];
+    private final long[] mTotalNanos = new long[EVENT_COUNT];
+    private final long[] mMaxNanos = new long[EVENT_COUNT];
+
+    @Override
+    public void onTraceEvent(int event, long durationNanos) {
+        mCounts[event]++;
+        mTotalNanos[event] += durationNanos;
+        if (durationNanos > mMaxNanos[event]) {
+            mMaxNanos[event] = durationNanos;
+        }
+    }
+
+    public long getCount(int event) {
+        return mCounts[event];
+    }
+
+    public long getTotalNanos(int event) {
+        return mTotalNanos[event];
+    }
+
+    public long getMaxNanos(int event) {
+        return mMaxNanos[event];
+    }
+
+    public void reset() {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mCounts[i] = 0;
+            mTotalNanos[i] = 0;
+            mMaxNanos[i] = 0;
+        }
+    }
+}
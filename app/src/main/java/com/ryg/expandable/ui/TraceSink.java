@@ -0,0 +1,68 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.ui;
+
+/**
+ * 接收控件热点路径上的打点
+ * <p>
+ * 控件只判断有没有设置 TraceSink, 没有设置时不计时也不拼接字符串.
+ * 回调都在主线程, 实现里不要做耗时操作.
+ *
+ * @see PinnedHeaderExpandableListView#setTraceSink(TraceSink)
+ * @see StickyLayout#setTraceSink(TraceSink)
+ * @see PrefetchingExpandableListAdapter#setTraceSink(TraceSink)
+ */
+public interface TraceSink {
+    // 刷新固定的头部(PinnedHeaderExpandableListView#refreshHeader)
+    int EVENT_REFRESH_HEADER = 0;
+    // 调用 OnHeaderUpdateListener#updatePinnedHeader 绑定头部
+    int EVENT_BIND_HEADER = 1;
+    // 测量并布局固定的头部
+    int EVENT_LAYOUT_HEADER = 2;
+    // StickyLayout 设置头部的高度
+    int EVENT_SET_HEADER_HEIGHT = 3;
+    // StickyLayout 为了改变头部高度而请求重新布局
+    int EVENT_REQUEST_LAYOUT = 4;
+    // 列表或 StickyLayout 的一次测量
+    int EVENT_MEASURE = 5;
+    // 列表或 StickyLayout 的一次布局
+    int EVENT_LAYOUT = 6;
+    // PrefetchingExpandableListAdapter 绑定一个 group 的行 View
+    int EVENT_BIND_GROUP_VIEW = 7;
+    // PrefetchingExpandableListAdapter 绑定一个子元素的行 View
+    int EVENT_BIND_CHILD_VIEW = 8;
+    // 绘制列表和固定的头部(PinnedHeaderExpandableListView#dispatchDraw)
+    int EVENT_DRAW = 9;
+
+    int EVENT_COUNT = 10;
+
+    /**
+     * @param event         EVENT_* 之一
+     * @param durationNanos 这次事件的耗时, 没有计时的事件为 0  单位：ns
+     */
+    public void onTraceEvent(int event, long durationNanos);
+}
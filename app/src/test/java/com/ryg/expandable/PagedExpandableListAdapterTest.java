@@ -0,0 +1,160 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable;
+
+import android.app.Activity;
+import android.database.DataSetObserver;
+import android.widget.ExpandableListView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 检查屏幕上的页不会被丢弃, 加载失败的页稍后重试
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "src/main/AndroidManifest.xml", sdk = 21)
+public class PagedExpandableListAdapterTest {
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_PAGES = 3;
+    private static final int CHILDREN_PER_GROUP = 100;
+
+    private PagedExpandableListAdapter mAdapter;
+    private final AtomicInteger mLoadCount = new AtomicInteger();
+    private final AtomicInteger mFailuresLeft = new AtomicInteger();
+    // 每加载完一页释放一次
+    private final Semaphore mLoaded = new Semaphore(0);
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        ShadowLooper.pauseMainLooper();
+        List<Group> groupList = new ArrayList<Group>();
+        for (int i = 0; i < 2; i++) {
+            Group group = new Group();
+            group.setId(i);
+            group.setTitle("group-" + i);
+            group.setChildCount(CHILDREN_PER_GROUP);
+            groupList.add(group);
+        }
+        mAdapter = new PagedExpandableListAdapter(activity, groupList, new PeopleDataSource() {
+            @Override
+            public List<People> loadChildren(Group group, int groupPosition, int start, int count) {
+                mLoadCount.incrementAndGet();
+                try {
+                    if (mFailuresLeft.getAndDecrement() > 0) {
+                        throw new IllegalStateException("load failed");
+                    }
+                    List<People> children = new ArrayList<People>(count);
+                    for (int i = start; i < start + count; i++) {
+                        People people = new People();
+                        people.setId(i);
+                        children.add(people);
+                    }
+                    return children;
+                } finally {
+                    mLoaded.release();
+                }
+            }
+        }, PAGE_SIZE, MAX_PAGES);
+    }
+
+    @Test
+    public void visiblePagesAreNotEvicted() throws InterruptedException {
+        // 屏幕上是 group 0 的第 5 页到 group 1 的第 0 页, 加上两端预取的页比 maxPages 多
+        mAdapter.setVisibleRange(ExpandableListView.getPackedPositionForChild(0, 5 * PAGE_SIZE),
+                ExpandableListView.getPackedPositionForChild(1, 0));
+        for (int page = 5; page < CHILDREN_PER_GROUP / PAGE_SIZE; page++) {
+            mAdapter.getChild(0, page * PAGE_SIZE);
+        }
+        mAdapter.getChild(1, 0);
+        // group 0 的第 4 到 9 页, group 1 的第 0、1 页
+        awaitLoads(8);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        // 屏幕上的页和它们前后的页都没有被丢弃, 再绑定时不会重新加载
+        for (int page = 5; page < CHILDREN_PER_GROUP / PAGE_SIZE; page++) {
+            assertNotNull(mAdapter.getChild(0, page * PAGE_SIZE));
+        }
+        assertNotNull(mAdapter.getChild(1, 0));
+        assertEquals(8, mLoadCount.get());
+    }
+
+    @Test
+    public void failedPageIsRetriedAfterDelay() throws InterruptedException {
+        mAdapter.setVisibleRange(ExpandableListView.getPackedPositionForChild(0, 0),
+                ExpandableListView.getPackedPositionForChild(0, PAGE_SIZE - 1));
+        final int[] notifies = new int[1];
+        mAdapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifies[0]++;
+            }
+        });
+        mFailuresLeft.set(1);
+        assertNull(mAdapter.getChild(0, 0));
+        // 第 0 页失败, 第 1 页预取成功
+        awaitLoads(2);
+        ShadowLooper.runUiThreadTasks();
+        assertNull(mAdapter.getChild(0, 0));
+        int loadCount = mLoadCount.get();
+        // 重试之前再绑定也不重新加载
+        assertNull(mAdapter.getChild(0, 0));
+        assertEquals(loadCount, mLoadCount.get());
+
+        notifies[0] = 0;
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertTrue(notifies[0] > 0);
+        assertNull(mAdapter.getChild(0, 0));
+        awaitLoads(1);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertNotNull(mAdapter.getChild(0, 0));
+    }
+
+    private void awaitLoads(int count) throws InterruptedException {
+        assertTrue(mLoaded.tryAcquire(count, 5, TimeUnit.SECONDS));
+        // 加载线程在返回之后才把结果 post 到主线程
+        Thread.sleep(100);
+    }
+}
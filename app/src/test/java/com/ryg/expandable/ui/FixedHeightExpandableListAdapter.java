@@ -0,0 +1,130 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.ui;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseExpandableListAdapter;
+import android.widget.TextView;
+
+/**
+ * 行高固定的测试 adapter, 每绑定一行就向 TraceSink 打一次点, 和 PrefetchingExpandableListAdapter 一样
+ */
+class FixedHeightExpandableListAdapter extends BaseExpandableListAdapter {
+    static final int GROUP_HEIGHT = 40;
+    static final int CHILD_HEIGHT = 30;
+
+    private final Context mContext;
+    private int mGroupCount;
+    private final int mChildrenPerGroup;
+    private TraceSink mTraceSink;
+
+    FixedHeightExpandableListAdapter(Context context, int groupCount, int childrenPerGroup) {
+        mContext = context;
+        mGroupCount = groupCount;
+        mChildrenPerGroup = childrenPerGroup;
+    }
+
+    void setTraceSink(TraceSink traceSink) {
+        mTraceSink = traceSink;
+    }
+
+    void setGroupCount(int groupCount) {
+        mGroupCount = groupCount;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getGroupCount() {
+        return mGroupCount;
+    }
+
+    @Override
+    public int getChildrenCount(int groupPosition) {
+        return mChildrenPerGroup;
+    }
+
+    @Override
+    public Object getGroup(int groupPosition) {
+        return "group " + groupPosition;
+    }
+
+    @Override
+    public Object getChild(int groupPosition, int childPosition) {
+        return "child " + groupPosition + "-" + childPosition;
+    }
+
+    @Override
+    public long getGroupId(int groupPosition) {
+        return groupPosition;
+    }
+
+    @Override
+    public long getChildId(int groupPosition, int childPosition) {
+        return childPosition;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getGroupView(int groupPosition, boolean isExpanded, View convertView, ViewGroup parent) {
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_BIND_GROUP_VIEW, 0);
+        }
+        return bindRow(convertView, GROUP_HEIGHT, getGroup(groupPosition));
+    }
+
+    @Override
+    public View getChildView(int groupPosition, int childPosition, boolean isLastChild, View convertView,
+                             ViewGroup parent) {
+        if (mTraceSink != null) {
+            mTraceSink.onTraceEvent(TraceSink.EVENT_BIND_CHILD_VIEW, 0);
+        }
+        return bindRow(convertView, CHILD_HEIGHT, getChild(groupPosition, childPosition));
+    }
+
+    private View bindRow(View convertView, int height, Object text) {
+        TextView textView = (TextView) convertView;
+        if (textView == null || textView.getLayoutParams().height != height) {
+            textView = new TextView(mContext);
+            textView.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, height));
+        }
+        textView.setText(text.toString());
+        return textView;
+    }
+
+    @Override
+    public boolean isChildSelectable(int groupPosition, int childPosition) {
+        return true;
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.ui;
+
+import android.app.Activity;
+import android.database.DataSetObserver;
+import android.os.Parcelable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ExpandableListView;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按帧检查列表的测量、布局和绑定次数, 超出预算时测试失败
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "src/main/AndroidManifest.xml", sdk = 21)
+public class PinnedHeaderExpandableListViewTest {
+    // 滚动时每一帧的预算: 不请求布局、不测量、不布局, 新露出的行最多一行(每帧移动的距离小于行高)
+    private static final int REQUEST_LAYOUTS_PER_SCROLL_FRAME = 0;
+    private static final int MEASURES_PER_SCROLL_FRAME = 0;
+    private static final int LAYOUTS_PER_SCROLL_FRAME = 0;
+    private static final int ROW_BINDS_PER_SCROLL_FRAME = 1;
+    // 固定的 group 每变化一次, 头部绑定一次
+    private static final int HEADER_BINDS_PER_GROUP_CHANGE = 1;
+    // 展开/折叠一个 group 的预算: 一次布局, 头部绑定一次, 行最多重新绑定一屏再加新露出的一行
+    private static final int LAYOUTS_PER_TOGGLE = 1;
+    private static final int HEADER_BINDS_PER_TOGGLE = 1;
+    private static final int EXTRA_ROW_BINDS_PER_TOGGLE = 1;
+    // 一次设置多个 group 的展开状态: 列表只收到一次通知, 其余的预算和展开/折叠一个 group 相同
+    private static final int NOTIFIES_PER_BATCH = 1;
+
+    private static final int GROUP_COUNT = 40;
+    private static final int CHILDREN_PER_GROUP = 5;
+    private static final int PIXELS_PER_FRAME = 7;
+    private static final int FRAME_COUNT = 300;
+
+    private CountingListView mListView;
+    private FixedHeightExpandableListAdapter mAdapter;
+    private final TraceCounters mCounters = new TraceCounters();
+
+    /**
+     * 记录 requestLayout 的次数
+     */
+    static class CountingListView extends PinnedHeaderExpandableListView {
+        int requestLayoutCount;
+
+        CountingListView(Activity activity) {
+            super(activity);
+        }
+
+        @Override
+        public void requestLayout() {
+            requestLayoutCount++;
+            super.requestLayout();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        // 暂停主线程, 每一帧的消息(包括测量、布局)只在 nextFrame 里执行
+        ShadowLooper.pauseMainLooper();
+        mListView = new CountingListView(activity);
+        mAdapter = new FixedHeightExpandableListAdapter(activity, GROUP_COUNT, CHILDREN_PER_GROUP);
+        mListView.setAdapter(mAdapter);
+        mListView.setOnHeaderUpdateListener(new PinnedHeaderExpandableListView.OnHeaderUpdateListener() {
+            @Override
+            public View getPinnedHeader() {
+                // 头部的尺寸固定, 换内容时不需要重新测量
+                TextView headerView = new TextView(mListView.getContext());
+                headerView.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                        FixedHeightExpandableListAdapter.GROUP_HEIGHT));
+                return headerView;
+            }
+
+            @Override
+            public void updatePinnedHeader(View headerView, int firstVisibleGroupPos) {
+                ((TextView) headerView).setText(mAdapter.getGroup(firstVisibleGroupPos).toString());
+            }
+        });
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            mListView.expandGroup(i);
+        }
+        // Robolectric 的 ShadowAbsListView 截下了 setOnScrollListener, 列表收不到 onScroll, 这里直接设置回去
+        ReflectionHelpers.setField(AbsListView.class, mListView, "mOnScrollListener", mListView);
+        activity.setContentView(mListView);
+        nextFrame();
+        mAdapter.setTraceSink(mCounters);
+        mListView.setTraceSink(mCounters);
+        resetCounters();
+    }
+
+    @Test
+    public void scrollFrameStaysWithinBudget() {
+        final int[] offsetChanges = new int[1];
+        mListView.setOnHeaderOffsetChangeListener(new PinnedHeaderExpandableListView.OnHeaderOffsetChangeListener() {
+            @Override
+            public void onPinnedHeaderOffsetChanged(View headerView, int pinnedGroupPos, int offset) {
+                offsetChanges[0]++;
+            }
+        });
+        int pinnedGroup = mListView.getPinnedGroupPosition();
+        int groupChanges = 0;
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            mListView.scrollListBy(PIXELS_PER_FRAME);
+            nextFrame();
+            if (mListView.getPinnedGroupPosition() != pinnedGroup) {
+                pinnedGroup = mListView.getPinnedGroupPosition();
+                groupChanges++;
+            }
+        }
+
+        assertEquals(REQUEST_LAYOUTS_PER_SCROLL_FRAME * FRAME_COUNT, mListView.requestLayoutCount);
+        assertEquals(MEASURES_PER_SCROLL_FRAME * FRAME_COUNT, mCounters.getCount(TraceSink.EVENT_MEASURE));
+        assertEquals(LAYOUTS_PER_SCROLL_FRAME * FRAME_COUNT, mCounters.getCount(TraceSink.EVENT_LAYOUT));
+        assertTrue(getRowBindCount() <= ROW_BINDS_PER_SCROLL_FRAME * FRAME_COUNT);
+        // 滚过了好几个 group, 头部也被顶上去过
+        assertTrue(groupChanges > 2);
+        assertTrue(offsetChanges[0] > 0);
+        assertEquals(HEADER_BINDS_PER_GROUP_CHANGE * groupChanges, mCounters.getCount(TraceSink.EVENT_BIND_HEADER));
+        assertEquals(FRAME_COUNT, mCounters.getCount(TraceSink.EVENT_REFRESH_HEADER));
+    }
+
+    @Test
+    public void expandAndCollapseStayWithinBudget() {
+        mListView.scrollListBy(FixedHeightExpandableListAdapter.GROUP_HEIGHT);
+        nextFrame();
+        int pinnedGroup = mListView.getPinnedGroupPosition();
+        int visibleRows = mListView.getChildCount();
+        resetCounters();
+
+        mListView.collapseGroup(pinnedGroup);
+        nextFrame();
+        assertToggleWithinBudget(visibleRows);
+        assertEquals(pinnedGroup, mListView.getPinnedGroupPosition());
+
+        mListView.expandGroup(pinnedGroup);
+        nextFrame();
+        assertToggleWithinBudget(visibleRows);
+    }
+
+    @Test
+    public void expandAllAndCollapseAllNotifyOnce() {
+        final int[] notifies = new int[1];
+        mListView.getAdapter().registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifies[0]++;
+            }
+        });
+        int visibleRows = mListView.getChildCount();
+
+        mListView.collapseAll();
+        nextFrame();
+        assertEquals(NOTIFIES_PER_BATCH, notifies[0]);
+        assertToggleWithinBudget(visibleRows);
+        assertEquals(GROUP_COUNT, mListView.getCount());
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            assertFalse(mListView.isGroupExpanded(i));
+        }
+
+        notifies[0] = 0;
+        mListView.expandGroups(new int[] {1, 3});
+        nextFrame();
+        assertEquals(NOTIFIES_PER_BATCH, notifies[0]);
+        assertToggleWithinBudget(visibleRows);
+        assertEquals(GROUP_COUNT + 2 * CHILDREN_PER_GROUP, mListView.getCount());
+        assertEquals(ExpandableListView.getPackedPositionForChild(3, 0),
+                mListView.getExpandableListPosition(3 + CHILDREN_PER_GROUP + 1));
+
+        notifies[0] = 0;
+        mListView.expandAll();
+        nextFrame();
+        assertEquals(NOTIFIES_PER_BATCH, notifies[0]);
+        assertToggleWithinBudget(visibleRows);
+        assertEquals(GROUP_COUNT * (1 + CHILDREN_PER_GROUP), mListView.getCount());
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            assertTrue(mListView.isGroupExpanded(i));
+        }
+        // ExpandableListView 自己的查找和展开状态一致
+        long lastChild = ExpandableListView.getPackedPositionForChild(GROUP_COUNT - 1, CHILDREN_PER_GROUP - 1);
+        assertEquals(mListView.getCount() - 1, mListView.getFlatListPosition(lastChild));
+    }
+
+    @Test
+    public void restoreStoresExpansionOnceAndNotifiesOnce() {
+        mListView.collapseAll();
+        mListView.expandGroups(new int[] {2, 5});
+        nextFrame();
+        Parcelable state = mListView.onSaveInstanceState();
+        Activity activity = (Activity) mListView.getContext();
+
+        // ExpandableListView 自己的状态里没有展开的 group, 展开状态只按 id 保存了一份
+        ExpandableListView plainListView = new ExpandableListView(activity);
+        plainListView.setAdapter(new FixedHeightExpandableListAdapter(activity, GROUP_COUNT, CHILDREN_PER_GROUP));
+        plainListView.onRestoreInstanceState(((View.BaseSavedState) state).getSuperState());
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            assertFalse(plainListView.isGroupExpanded(i));
+        }
+
+        PinnedHeaderExpandableListView restoredListView = new PinnedHeaderExpandableListView(activity);
+        restoredListView.setAdapter(new FixedHeightExpandableListAdapter(activity, GROUP_COUNT, CHILDREN_PER_GROUP));
+        final int[] notifies = new int[1];
+        restoredListView.getAdapter().registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifies[0]++;
+            }
+        });
+        restoredListView.onRestoreInstanceState(state);
+        assertEquals(NOTIFIES_PER_BATCH, notifies[0]);
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            assertEquals(i == 2 || i == 5, restoredListView.isGroupExpanded(i));
+        }
+        assertEquals(GROUP_COUNT + 2 * CHILDREN_PER_GROUP, restoredListView.getCount());
+        assertEquals(ExpandableListView.getPackedPositionForChild(5, 0),
+                restoredListView.getExpandableListPosition(5 + CHILDREN_PER_GROUP + 1));
+    }
+
+    @Test
+    public void groupsChangedAtEndKeepPinnedHeader() {
+        int expandedCount = GROUP_COUNT * (1 + CHILDREN_PER_GROUP);
+        mAdapter.setGroupCount(GROUP_COUNT + 5);
+        mListView.onGroupsChangedAtEnd(GROUP_COUNT);
+        nextFrame();
+        // 固定的 group 还在, 头部不重新绑定; 前面的 group 保持展开, 追加的 group 是折叠的
+        assertEquals(0, mCounters.getCount(TraceSink.EVENT_BIND_HEADER));
+        assertEquals(expandedCount + 5, mListView.getCount());
+        assertTrue(mListView.isGroupExpanded(GROUP_COUNT - 1));
+        assertFalse(mListView.isGroupExpanded(GROUP_COUNT));
+        assertEquals(expandedCount + 4,
+                mListView.getFlatListPosition(ExpandableListView.getPackedPositionForGroup(GROUP_COUNT + 4)));
+
+        resetCounters();
+        mAdapter.setGroupCount(GROUP_COUNT - 1);
+        mListView.onGroupsChangedAtEnd(GROUP_COUNT + 5);
+        nextFrame();
+        assertEquals(0, mCounters.getCount(TraceSink.EVENT_BIND_HEADER));
+        assertEquals((GROUP_COUNT - 1) * (1 + CHILDREN_PER_GROUP), mListView.getCount());
+        assertEquals(ExpandableListView.getPackedPositionForChild(GROUP_COUNT - 2, CHILDREN_PER_GROUP - 1),
+                mListView.getExpandableListPosition(mListView.getCount() - 1));
+    }
+
+    private void assertToggleWithinBudget(int visibleRows) {
+        assertEquals(LAYOUTS_PER_TOGGLE, mCounters.getCount(TraceSink.EVENT_LAYOUT));
+        assertEquals(HEADER_BINDS_PER_TOGGLE, mCounters.getCount(TraceSink.EVENT_BIND_HEADER));
+        assertTrue("row binds: " + getRowBindCount(), getRowBindCount() <= visibleRows + EXTRA_ROW_BINDS_PER_TOGGLE);
+        resetCounters();
+    }
+
+    private long getRowBindCount() {
+        return mCounters.getCount(TraceSink.EVENT_BIND_GROUP_VIEW) + mCounters.getCount(TraceSink.EVENT_BIND_CHILD_VIEW);
+    }
+
+    private void resetCounters() {
+        mCounters.reset();
+        mListView.requestLayoutCount = 0;
+    }
+
+    // 执行主线程上排队的消息, 包括这一帧的测量、布局和绘制
+    private static void nextFrame() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.ui;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import com.ryg.expandable.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 偏移模式下, 列表通过嵌套滑动折叠、展开头部的每一帧都不应该测量和布局
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "src/main/AndroidManifest.xml", sdk = 21)
+public class StickyLayoutTest {
+    // 折叠、展开头部时每一帧的预算: 只移动头部和内容
+    private static final int REQUEST_LAYOUTS_PER_FRAME = 0;
+    private static final int MEASURES_PER_FRAME = 0;
+    private static final int LAYOUTS_PER_FRAME = 0;
+    private static final int HEADER_HEIGHT_CHANGES_PER_FRAME = 1;
+
+    private static final int HEADER_HEIGHT = 200;
+    private static final int PIXELS_PER_FRAME = 8;
+    private static final int FRAME_COUNT = HEADER_HEIGHT / PIXELS_PER_FRAME;
+
+    private StickyLayout mStickyLayout;
+    private PinnedHeaderExpandableListView mListView;
+    private final TraceCounters mCounters = new TraceCounters();
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        // 暂停主线程, 每一帧的消息(包括测量、布局)只在 nextFrame 里执行
+        ShadowLooper.pauseMainLooper();
+        mStickyLayout = new StickyLayout(activity);
+        mStickyLayout.setOrientation(LinearLayout.VERTICAL);
+        View header = new View(activity);
+        header.setId(R.id.sticky_header);
+        mStickyLayout.addView(header, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, HEADER_HEIGHT));
+        mListView = new PinnedHeaderExpandableListView(activity);
+        mListView.setId(R.id.sticky_content);
+        mListView.setAdapter(new FixedHeightExpandableListAdapter(activity, 40, 5));
+        mStickyLayout.addView(mListView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+        mStickyLayout.setCollapseMode(StickyLayout.COLLAPSE_MODE_OFFSET);
+        activity.setContentView(mStickyLayout);
+        nextFrame();
+        // 窗口获得焦点时 StickyLayout 读取头部的高度, 偏移模式下会再布局一次
+        mStickyLayout.onWindowFocusChanged(true);
+        nextFrame();
+        mStickyLayout.setTraceSink(mCounters);
+        mListView.setTraceSink(mCounters);
+        mCounters.reset();
+    }
+
+    @Test
+    public void nestedScrollFrameStaysWithinBudget() {
+        int headerTop = getHeaderTop();
+        mListView.startNestedScroll(View.SCROLL_AXIS_VERTICAL);
+        int[] consumed = new int[2];
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            consumed[1] = 0;
+            mListView.dispatchNestedPreScroll(0, PIXELS_PER_FRAME, consumed, null);
+            assertEquals(PIXELS_PER_FRAME, consumed[1]);
+            nextFrame();
+        }
+        assertEquals(0, mStickyLayout.getHeaderHeight());
+        assertEquals(headerTop - HEADER_HEIGHT, getHeaderTop());
+
+        // 列表已经在顶部, 继续往下拉时展开头部
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            mListView.dispatchNestedScroll(0, 0, 0, -PIXELS_PER_FRAME, null);
+            nextFrame();
+        }
+        mListView.stopNestedScroll();
+        assertEquals(HEADER_HEIGHT, mStickyLayout.getHeaderHeight());
+        assertEquals(headerTop, getHeaderTop());
+
+        int frames = 2 * FRAME_COUNT;
+        assertEquals(REQUEST_LAYOUTS_PER_FRAME * frames, mCounters.getCount(TraceSink.EVENT_REQUEST_LAYOUT));
+        assertEquals(MEASURES_PER_FRAME * frames, mCounters.getCount(TraceSink.EVENT_MEASURE));
+        assertEquals(LAYOUTS_PER_FRAME * frames, mCounters.getCount(TraceSink.EVENT_LAYOUT));
+        assertEquals(HEADER_HEIGHT_CHANGES_PER_FRAME * frames, mCounters.getCount(TraceSink.EVENT_SET_HEADER_HEIGHT));
+    }
+
+    private int getHeaderTop() {
+        return mStickyLayout.findViewById(R.id.sticky_header).getTop();
+    }
+
+    // 执行主线程上排队的消息, 包括这一帧的测量、布局和绘制
+    private static void nextFrame() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.core.benchmark;
+
+import com.ryg.expandable.core.GroupPositionIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 展开/折叠单个 group 的索引更新, 以及全部展开/折叠时的一次重建
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpandCollapseBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int childCount;
+
+    private SyntheticStructure mStructure;
+    private final GroupPositionIndex mIndex = new GroupPositionIndex();
+    private final BitSet mExpandedGroups = new BitSet();
+    private BitSet mAllExpanded;
+    private final BitSet mNoneExpanded = new BitSet();
+    private int mNextGroup;
+    private boolean mRebuildExpanded;
+
+    @Setup
+    public void setUp() {
+        mStructure = new SyntheticStructure(childCount);
+        mAllExpanded = new BitSet();
+        mAllExpanded.set(0, mStructure.getGroupCount());
+        mExpandedGroups.clear();
+        mIndex.rebuild(mStructure, mExpandedGroups, 0);
+    }
+
+    @Benchmark
+    public int toggleGroup() {
+        // 按步长跳着切换, 更新会落在树的不同位置上
+        int groupCount = mStructure.getGroupCount();
+        int group = mNextGroup;
+        mNextGroup = (mNextGroup + 7919) % groupCount;
+        boolean expanded = !mExpandedGroups.get(group);
+        mExpandedGroups.set(group, expanded);
+        mIndex.setGroupExpanded(group, expanded, mStructure.getChildrenCount(group));
+        return mIndex.getItemCount();
+    }
+
+    @Benchmark
+    public int expandAllThenCollapseAll() {
+        mRebuildExpanded = !mRebuildExpanded;
+        mIndex.rebuild(mStructure, mRebuildExpanded ? mAllExpanded : mNoneExpanded, 0);
+        return mIndex.getItemCount();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.core.benchmark;
+
+import com.ryg.expandable.core.GroupPositionIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扁平位置和 group 之间的相互查找, 位置是随机的, 避免只测到缓存命中的情况
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionLookupBenchmark {
+    private static final int SAMPLE_COUNT = 4096;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int childCount;
+
+    private final GroupPositionIndex mIndex = new GroupPositionIndex();
+    private final int[] mFlatPositions = new int[SAMPLE_COUNT];
+    private final int[] mGroupPositions = new int[SAMPLE_COUNT];
+    private int mSample;
+
+    @Setup
+    public void setUp() {
+        SyntheticStructure structure = new SyntheticStructure(childCount);
+        // 展开一半的 group, 每个 group 占的行数不一样
+        BitSet expandedGroups = new BitSet();
+        for (int i = 0; i < structure.getGroupCount(); i += 2) {
+            expandedGroups.set(i);
+        }
+        mIndex.rebuild(structure, expandedGroups, 0);
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mFlatPositions[i] = random.nextInt(mIndex.getItemCount());
+            mGroupPositions[i] = random.nextInt(mIndex.getGroupCount());
+        }
+    }
+
+    @Benchmark
+    public int flatToGroup() {
+        mSample = (mSample + 1) & (SAMPLE_COUNT - 1);
+        return mIndex.getGroupForFlatPosition(mFlatPositions[mSample]);
+    }
+
+    @Benchmark
+    public int groupToFlat() {
+        mSample = (mSample + 1) & (SAMPLE_COUNT - 1);
+        return mIndex.getFlatPosition(mGroupPositions[mSample]);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.core.benchmark;
+
+import com.ryg.expandable.core.GroupPositionIndex;
+import com.ryg.expandable.core.PinnedHeaderLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个滚动帧里固定头部要做的计算: 找到固定的 group、判断下一个 group 是否相邻、算出被顶上去的距离
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollFrameBenchmark {
+    private static final int GROUP_HEIGHT = 96;
+    private static final int CHILD_HEIGHT = 64;
+    private static final int HEADER_HEIGHT = GROUP_HEIGHT;
+    private static final int DIVIDER_HEIGHT = 1;
+    // 每帧滚动的像素数, 大约是一次快速滑动的速度
+    private static final int PIXELS_PER_FRAME = 40;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int childCount;
+
+    private PinnedHeaderLayout mLayout;
+    private int mItemCount;
+    private int mFirstVisiblePos;
+    private int mFirstRowTop;
+
+    @Setup
+    public void setUp() {
+        SyntheticStructure structure = new SyntheticStructure(childCount);
+        BitSet expandedGroups = new BitSet();
+        expandedGroups.set(0, structure.getGroupCount());
+        GroupPositionIndex index = new GroupPositionIndex();
+        index.rebuild(structure, expandedGroups, 0);
+        mLayout = new PinnedHeaderLayout(index);
+        mLayout.setFixedItemHeights(GROUP_HEIGHT, CHILD_HEIGHT);
+        mItemCount = index.getItemCount();
+    }
+
+    @Benchmark
+    public int scrollFrame() {
+        // 向下滚动一帧, 第一个可见元素滚出去后换成下一个, 到底后从头开始
+        mFirstRowTop -= PIXELS_PER_FRAME;
+        if (mFirstRowTop <= -CHILD_HEIGHT) {
+            mFirstRowTop = 0;
+            mFirstVisiblePos = mFirstVisiblePos + 1 < mItemCount ? mFirstVisiblePos + 1 : 0;
+        }
+        int pinnedGroup = mLayout.findPinnedGroup(mFirstVisiblePos);
+        if (!mLayout.isNextGroupAdjacent(mFirstVisiblePos, pinnedGroup)) {
+            return pinnedGroup;
+        }
+        int nextGroupTop = mLayout.computeNextGroupTop(mFirstVisiblePos, pinnedGroup, mFirstRowTop, DIVIDER_HEIGHT);
+        return pinnedGroup + PinnedHeaderLayout.computeHeaderOffset(HEADER_HEIGHT, nextGroupTop);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.core;
+
+import java.util.BitSet;
+
+/**
+ * 记录每个 group 在扁平列表(flat list)中的起始位置
+ * <p>
+ * 扁平位置和 ListView 的 position 一致, 包含列表的 header view.
+ * 用树状数组(Fenwick tree)保存每个 group 占的条目数(group 本身加上展开的子元素),
+ * group -> 扁平位置、扁平位置 -> group 都是 O(log n); 展开/折叠一个 group 是 O(log n) 的单点更新,
+ * 全部展开/折叠或数据变化后用 {@link #rebuild} 一次 O(n) 重建.
+ */
+public final class GroupPositionIndex {
+    public static final int INVALID_POSITION = -1;
+
+    // mTree[1..mGroupCount] 是树状数组, mSizes[i] 是第 i 个 group 当前占的条目数
+    private int[] mTree = new int[1];
+    private int[] mSizes = new int[0];
+    private int mGroupCount;
+    // 不大于 mGroupCount 的最大的 2 的幂, 用来从树上二分
+    private int mHighestBit;
+    private int mHeaderCount;
+    private int mTotal;
+
+    /**
+     * @param structure      group 和子元素的个数, 为 null 时清空
+     * @param expandedGroups 展开的 group
+     * @param headerCount    列表的 header view 个数
+     */
+    public void rebuild(ExpandableStructure structure, BitSet expandedGroups, int headerCount) {
+        int groupCount = structure == null ? 0 : structure.getGroupCount();
+        if (mSizes.length < groupCount) {
+            mSizes = new int[groupCount];
+            mTree = new int[groupCount + 1];
+        }
+        mGroupCount = groupCount;
+        mHeaderCount = headerCount;
+        mHighestBit = groupCount == 0 ? 0 : Integer.highestOneBit(groupCount);
+        mTotal = 0;
+        for (int i = 0; i < groupCount; i++) {
+            int size = 1;
+            if (expandedGroups.get(i)) {
+                size += structure.getChildrenCount(i);
+            }
+            mSizes[i] = size;
+            mTree[i + 1] = size;
+            mTotal += size;
+        }
+        // 线性时间建树: 每个节点把自己的和加到父节点上
+        for (int i = 1; i <= groupCount; i++) {
+            int parent = i + (i & -i);
+            if (parent <= groupCount) {
+                mTree[parent] += mTree[i];
+            }
+        }
+    }
+
+    /**
+     * 展开或折叠了一个 group
+     */
+    public void setGroupExpanded(int groupPosition, boolean expanded, int childCount) {
+        int size = expanded ? 1 + childCount : 1;
+        int delta = size - mSizes[groupPosition];
+        if (delta == 0) {
+            return;
+        }
+        mSizes[groupPosition] = size;
+        mTotal += delta;
+        for (int i = groupPosition + 1; i <= mGroupCount; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    public int getGroupCount() {
+        return mGroupCount;
+    }
+
+    /**
+     * @return 扁平列表里 group 和子元素的总数, 不包括 header view 和 footer view
+     */
+    public int getItemCount() {
+        return mTotal;
+    }
+
+    /**
+     * @return group 所在的扁平位置; groupPosition 等于 group 个数时返回最后一个 group 结束后的位置
+     */
+    public int getFlatPosition(int groupPosition) {
+        int sum = 0;
+        for (int i = groupPosition; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return mHeaderCount + sum;
+    }
+
+    /**
+     * 在树上二分查找扁平位置所属的 group
+     *
+     * @return group 的索引号, 位于 header view 或 footer view 上时返回 {@link #INVALID_POSITION}
+     */
+    public int getGroupForFlatPosition(int flatPos) {
+        int target = flatPos - mHeaderCount;
+        if (target < 0 || target >= mTotal) {
+            return INVALID_POSITION;
+        }
+        // 找到前缀和不超过 target 的最长前缀, 它的长度就是所属 group 的索引
+        int index = 0;
+        for (int bit = mHighestBit; bit != 0; bit >>= 1) {
+            int next = index + bit;
+            if (next <= mGroupCount && mTree[next] <= target) {
+                index = next;
+                target -= mTree[next];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return 扁平位置对应的子元素在 group 里的索引, 是 group 本身时返回 -1
+     */
+    public int getChildPosition(int flatPos, int groupPosition) {
+        return flatPos - getFlatPosition(groupPosition) - 1;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ryg.expandable.core;
+
+/**
+ * 固定头部的位置计算, 不依赖 Android
+ * <p>
+ * 哪个 group 固定在头部、下一个 group 是否紧跟在后面、头部被顶上去的距离、
+ * 点击是否落在头部上以及固定行高时列表的高度都在这里计算, View 只负责提供行的位置并绘制.
+ */
+public final class PinnedHeaderLayout {
+    private final GroupPositionIndex mIndex;
+    // 固定行高, 为 0 时表示不知道
+    private int mFixedGroupHeight;
+    private int mFixedChildHeight;
+
+    public PinnedHeaderLayout(GroupPositionIndex index) {
+        mIndex = index;
+    }
+
+    public GroupPositionIndex getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * @param groupHeight group 的高度, 小于等于 0 时表示不知道
+     * @param childHeight 子元素的高度, 小于等于 0 时表示不知道
+     */
+    public void setFixedItemHeights(int groupHeight, int childHeight) {
+        mFixedGroupHeight = Math.max(groupHeight, 0);
+        mFixedChildHeight = Math.max(childHeight, 0);
+    }
+
+    public int getFixedGroupHeight() {
+        return mFixedGroupHeight;
+    }
+
+    public int getFixedChildHeight() {
+        return mFixedChildHeight;
+    }
+
+    /**
+     * @return group 和子元素的高度是否都已经知道
+     */
+    public boolean hasFixedItemHeights() {
+        return mFixedGroupHeight > 0 && mFixedChildHeight > 0;
+    }
+
+    /**
+     * @return 第一个可见元素所在的 group, 也就是固定在头部的 group
+     */
+    public int findPinnedGroup(int firstVisiblePos) {
+        return mIndex.getGroupForFlatPosition(firstVisiblePos);
+    }
+
+    /**
+     * @return 第一个可见元素是否是固定的 group 的最后一行, 也就是第二个可见元素是下一个 group
+     */
+    public boolean isNextGroupAdjacent(int firstVisiblePos, int pinnedGroup) {
+        return pinnedGroup != GroupPositionIndex.INVALID_POSITION && pinnedGroup + 1 < mIndex.getGroupCount()
+                && mIndex.getFlatPosition(pinnedGroup + 1) == firstVisiblePos + 1;
+    }
+
+    /**
+     * 行高固定时, 由第一个可见元素的位置算出下一个 group 的位置
+     *
+     * @param firstRowTop 第一个可见元素的 top
+     */
+    public int computeNextGroupTop(int firstVisiblePos, int pinnedGroup, int firstRowTop, int dividerHeight) {
+        int rowHeight = firstVisiblePos == mIndex.getFlatPosition(pinnedGroup) ? mFixedGroupHeight : mFixedChildHeight;
+        return firstRowTop + rowHeight + dividerHeight;
+    }
+
+    /**
+     * @param nextGroupTop 下一个 group 的 top
+     * @return 头部被下一个 group 顶上去的距离
+     */
+    public static int computeHeaderOffset(int headerHeight, int nextGroupTop) {
+        return nextGroupTop < headerHeight ? headerHeight - nextGroupTop : 0;
+    }
+
+    /**
+     * @return 点击位置是否落在被顶上去 headerOffset 的头部上
+     */
+    public static boolean isInHeader(int x, int y, int headerWidth, int headerHeight, int headerOffset) {
+        int headerTop = -headerOffset;
+        return x >= 0 && x < headerWidth && y >= headerTop && y < headerTop + headerHeight;
+    }
+
+    /**
+     * 行高固定时按行数算出所有行的总高度, 不包括 padding
+     */
+    public long computeContentHeight(int dividerHeight) {
+        int groupCount = mIndex.getGroupCount();
+        int itemCount = mIndex.getItemCount();
+        long height = (long) groupCount * mFixedGroupHeight + (long) (itemCount - groupCount) * mFixedChildHeight;
+        if (itemCount > 1) {
+            height += (long) (itemCount - 1) * dividerHeight;
+        }
+        return height;
+    }
+}
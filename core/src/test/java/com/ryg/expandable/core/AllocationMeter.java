@@ -0,0 +1,77 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.core;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 统计当前线程在一段代码里分配的内存, 基于 HotSpot 的 com.sun.management.ThreadMXBean
+ */
+final class AllocationMeter {
+    private final com.sun.management.ThreadMXBean mBean;
+    private final long mThreadId = Thread.currentThread().getId();
+    // 读取计数本身分配的内存
+    private final long mOverhead;
+
+    private AllocationMeter(com.sun.management.ThreadMXBean bean) {
+        mBean = bean;
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            long start = mBean.getThreadAllocatedBytes(mThreadId);
+            overhead = Math.min(overhead, mBean.getThreadAllocatedBytes(mThreadId) - start);
+        }
+        mOverhead = overhead;
+    }
+
+    /**
+     * @return JVM 不支持按线程统计分配时返回 null
+     */
+    static AllocationMeter create() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return new AllocationMeter(sunBean);
+    }
+
+    long start() {
+        return mBean.getThreadAllocatedBytes(mThreadId);
+    }
+
+    /**
+     * @return 从 start 返回的计数开始分配的字节数
+     */
+    long stop(long start) {
+        return Math.max(0, mBean.getThreadAllocatedBytes(mThreadId) - start - mOverhead);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.core;
+
+/**
+ * 记录 adapter 被调用的次数, 用来检查每一帧、每次展开/折叠访问 adapter 的预算
+ */
+final class CountingStructure implements ExpandableStructure {
+    private final int mGroupCount;
+    private final int mChildrenPerGroup;
+    int groupCountCalls;
+    int childrenCountCalls;
+
+    CountingStructure(int groupCount, int childrenPerGroup) {
+        mGroupCount = groupCount;
+        mChildrenPerGroup = childrenPerGroup;
+    }
+
+    @Override
+    public int getGroupCount() {
+        groupCountCalls++;
+        return mGroupCount;
+    }
+
+    @Override
+    public int getChildrenCount(int groupPosition) {
+        childrenCountCalls++;
+        return mChildrenPerGroup;
+    }
+
+    int getCalls() {
+        return groupCountCalls + childrenCountCalls;
+    }
+
+    void resetCalls() {
+        groupCountCalls = 0;
+        childrenCountCalls = 0;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.core;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GroupPositionIndexTest {
+    // 展开/折叠只做树状数组的单点更新, 不分配内存
+    private static final long ALLOCATED_BYTES_PER_TOGGLE = 0;
+
+    private static final int GROUP_COUNT = 10000;
+    private static final int CHILDREN_PER_GROUP = 10;
+    private static final int HEADER_COUNT = 2;
+
+    @Test
+    public void lookupsMatchLinearScan() {
+        Random random = new Random(42);
+        CountingStructure structure = new CountingStructure(500, 7);
+        BitSet expanded = new BitSet();
+        GroupPositionIndex index = new GroupPositionIndex();
+        index.rebuild(structure, expanded, HEADER_COUNT);
+        for (int round = 0; round < 200; round++) {
+            int group = random.nextInt(500);
+            boolean expand = !expanded.get(group);
+            expanded.set(group, expand);
+            index.setGroupExpanded(group, expand, 7);
+            assertMatchesLinearScan(index, expanded, 500, 7);
+        }
+    }
+
+    @Test
+    public void toggleStaysWithinAllocationBudget() {
+        AllocationMeter meter = AllocationMeter.create();
+        Assume.assumeNotNull(meter);
+        GroupPositionIndex index = new GroupPositionIndex();
+        index.rebuild(new CountingStructure(GROUP_COUNT, CHILDREN_PER_GROUP), new BitSet(), HEADER_COUNT);
+        toggleAll(index);
+
+        long start = meter.start();
+        toggleAll(index);
+        long allocated = meter.stop(start);
+        assertEquals(ALLOCATED_BYTES_PER_TOGGLE * 2 * GROUP_COUNT, allocated);
+    }
+
+    @Test
+    public void rebuildOnlyAsksForChildrenOfExpandedGroups() {
+        CountingStructure structure = new CountingStructure(GROUP_COUNT, CHILDREN_PER_GROUP);
+        BitSet expanded = new BitSet();
+        expanded.set(0, GROUP_COUNT / 4);
+        GroupPositionIndex index = new GroupPositionIndex();
+        index.rebuild(structure, expanded, HEADER_COUNT);
+        assertEquals(1, structure.groupCountCalls);
+        assertEquals(GROUP_COUNT / 4, structure.childrenCountCalls);
+    }
+
+    @Test
+    public void rebuildWithSameGroupCountReusesArrays() {
+        AllocationMeter meter = AllocationMeter.create();
+        Assume.assumeNotNull(meter);
+        CountingStructure structure = new CountingStructure(GROUP_COUNT, CHILDREN_PER_GROUP);
+        BitSet expanded = new BitSet();
+        expanded.set(0, GROUP_COUNT);
+        GroupPositionIndex index = new GroupPositionIndex();
+        index.rebuild(structure, expanded, HEADER_COUNT);
+
+        long start = meter.start();
+        index.rebuild(structure, expanded, HEADER_COUNT);
+        assertEquals(0, meter.stop(start));
+    }
+
+    private static void toggleAll(GroupPositionIndex index) {
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            index.setGroupExpanded(i, true, CHILDREN_PER_GROUP);
+        }
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            index.setGroupExpanded(i, false, CHILDREN_PER_GROUP);
+        }
+    }
+
+    private static void assertMatchesLinearScan(GroupPositionIndex index, BitSet expanded,
+                                                int groupCount, int childrenPerGroup) {
+        int flatPos = HEADER_COUNT;
+        for (int g = 0; g < groupCount; g++) {
+            assertEquals(flatPos, index.getFlatPosition(g));
+            int size = expanded.get(g) ? 1 + childrenPerGroup : 1;
+            for (int i = 0; i < size; i++) {
+                assertEquals(g, index.getGroupForFlatPosition(flatPos + i));
+                assertEquals(i - 1, index.getChildPosition(flatPos + i, g));
+            }
+            flatPos += size;
+        }
+        assertEquals(flatPos - HEADER_COUNT, index.getItemCount());
+        assertEquals(GroupPositionIndex.INVALID_POSITION, index.getGroupForFlatPosition(HEADER_COUNT - 1));
+        assertEquals(GroupPositionIndex.INVALID_POSITION, index.getGroupForFlatPosition(flatPos));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014 singwhatiwanna
+ * https://github.com/singwhatiwanna
+ * http://blog.csdn.net/singwhatiwanna
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.ryg.expandable.core;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 固定头部每一帧的计算(对应 PinnedHeaderExpandableListView#refreshHeader 里和位置有关的部分)
+ */
+public class PinnedHeaderLayoutTest {
+    // 每一帧只查位置索引, 不分配内存
+    private static final long ALLOCATED_BYTES_PER_FRAME = 0;
+
+    private static final int GROUP_COUNT = 10000;
+    private static final int CHILDREN_PER_GROUP = 10;
+    private static final int GROUP_HEIGHT = 96;
+    private static final int CHILD_HEIGHT = 64;
+    private static final int HEADER_HEIGHT = GROUP_HEIGHT;
+    private static final int DIVIDER_HEIGHT = 1;
+    private static final int PIXELS_PER_FRAME = 40;
+
+    private PinnedHeaderLayout mLayout;
+    // 模拟滚动的状态
+    private int mFirstVisiblePos;
+    private int mFirstRowTop;
+
+    @Before
+    public void setUp() {
+        BitSet expanded = new BitSet();
+        expanded.set(0, GROUP_COUNT);
+        GroupPositionIndex index = new GroupPositionIndex();
+        index.rebuild(new CountingStructure(GROUP_COUNT, CHILDREN_PER_GROUP), expanded, 0);
+        mLayout = new PinnedHeaderLayout(index);
+        mLayout.setFixedItemHeights(GROUP_HEIGHT, CHILD_HEIGHT);
+    }
+
+    @Test
+    public void scrollFrameStaysWithinAllocationBudget() {
+        AllocationMeter meter = AllocationMeter.create();
+        Assume.assumeNotNull(meter);
+        scrollToEnd();
+        mFirstVisiblePos = 0;
+        mFirstRowTop = 0;
+
+        long start = meter.start();
+        int frames = scrollToEnd();
+        assertEquals(ALLOCATED_BYTES_PER_FRAME * frames, meter.stop(start));
+    }
+
+    @Test
+    public void headerIsPushedUpByTheNextGroup() {
+        // 第一个 group 的最后一个子元素在最上面, 下一个 group 紧跟在后面
+        int lastChildPos = CHILDREN_PER_GROUP;
+        assertEquals(0, mLayout.findPinnedGroup(lastChildPos));
+        assertTrue(mLayout.isNextGroupAdjacent(lastChildPos, 0));
+        assertFalse(mLayout.isNextGroupAdjacent(lastChildPos - 1, 0));
+
+        // 最后一个子元素向上滚出 40px, 下一个 group 的 top 是 64 - 40 + 1 = 25
+        int nextGroupTop = mLayout.computeNextGroupTop(lastChildPos, 0, -40, DIVIDER_HEIGHT);
+        assertEquals(CHILD_HEIGHT - 40 + DIVIDER_HEIGHT, nextGroupTop);
+        assertEquals(HEADER_HEIGHT - nextGroupTop, PinnedHeaderLayout.computeHeaderOffset(HEADER_HEIGHT, nextGroupTop));
+        assertEquals(0, PinnedHeaderLayout.computeHeaderOffset(HEADER_HEIGHT, HEADER_HEIGHT + 1));
+        assertEquals(1, mLayout.findPinnedGroup(lastChildPos + 1));
+    }
+
+    @Test
+    public void touchOnPushedUpHeader() {
+        int offset = 30;
+        assertTrue(PinnedHeaderLayout.isInHeader(0, 0, 100, HEADER_HEIGHT, offset));
+        assertTrue(PinnedHeaderLayout.isInHeader(99, HEADER_HEIGHT - offset - 1, 100, HEADER_HEIGHT, offset));
+        assertFalse(PinnedHeaderLayout.isInHeader(99, HEADER_HEIGHT - offset, 100, HEADER_HEIGHT, offset));
+        assertFalse(PinnedHeaderLayout.isInHeader(100, 0, 100, HEADER_HEIGHT, offset));
+    }
+
+    @Test
+    public void contentHeightCountsEveryRowAndDivider() {
+        int itemCount = GROUP_COUNT * (1 + CHILDREN_PER_GROUP);
+        long expected = (long) GROUP_COUNT * GROUP_HEIGHT + (long) GROUP_COUNT * CHILDREN_PER_GROUP * CHILD_HEIGHT
+                + (long) (itemCount - 1) * DIVIDER_HEIGHT;
+        assertEquals(expected, mLayout.computeContentHeight(DIVIDER_HEIGHT));
+    }
+
+    /**
+     * 从当前位置一帧一帧滚到底, 每帧做一次刷新头部的计算
+     *
+     * @return 帧数
+     */
+    private int scrollToEnd() {
+        int itemCount = mLayout.getIndex().getItemCount();
+        int frames = 0;
+        int checksum = 0;
+        while (mFirstVisiblePos < itemCount) {
+            checksum += refreshHeaderFrame();
+            frames++;
+            mFirstRowTop -= PIXELS_PER_FRAME;
+            if (mFirstRowTop <= -CHILD_HEIGHT) {
+                mFirstRowTop = 0;
+                mFirstVisiblePos++;
+            }
+        }
+        assertTrue(checksum > 0);
+        return frames;
+    }
+
+    private int refreshHeaderFrame() {
+        int pinnedGroup = mLayout.findPinnedGroup(mFirstVisiblePos);
+        if (!mLayout.isNextGroupAdjacent(mFirstVisiblePos, pinnedGroup)) {
+            return pinnedGroup;
+        }
+        int nextGroupTop = mLayout.computeNextGroupTop(mFirstVisiblePos, pinnedGroup, mFirstRowTop, DIVIDER_HEIGHT);
+        return pinnedGroup + PinnedHeaderLayout.computeHeaderOffset(HEADER_HEIGHT, nextGroupTop);
+    }
+}